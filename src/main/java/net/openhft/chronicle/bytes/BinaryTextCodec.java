@@ -0,0 +1,260 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Encodes binary as hexadecimal or Base64 text and decodes it again, from one Bytes to another
+ * without creating objects.  Whole words are converted at a time when there is enough input, with
+ * the rest done a byte at a time.
+ *
+ * <p>Hex is written in upper case and read in either case.  Base64 uses the standard alphabet with
+ * '=' padding from RFC 4648.
+ */
+enum BinaryTextCodec {
+    ;
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+
+    // two hex chars for each byte, the first in the low byte.
+    private static final short[] HEX_PAIRS = new short[256];
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    // the value of each Base64 char or -1
+    private static final byte[] BASE64_VALUES = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++)
+            HEX_PAIRS[i] = (short) (BytesInternal.HEXI_DECIMAL[i >> 4] | BytesInternal.HEXI_DECIMAL[i & 15] << 8);
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64.length; i++)
+            BASE64_VALUES[BASE64[i]] = (byte) i;
+    }
+
+    static void appendHex(@NotNull StreamingDataOutput out, @NotNull RandomDataInput in, long offset, long length)
+            throws IORuntimeException, BufferOverflowException, BufferUnderflowException {
+        long i = 0;
+        for (; i <= length - 8; i += 8) {
+            long word = littleEndian(in.readLong(offset + i));
+            out.writeLong(littleEndian(hexPairs(word)));
+            out.writeLong(littleEndian(hexPairs(word >>> 32)));
+        }
+        for (; i < length; i++)
+            out.writeShort(littleEndian(HEX_PAIRS[in.readUnsignedByte(offset + i)]));
+    }
+
+    /*
+     * The hex chars for the low four bytes.
+     */
+    private static long hexPairs(long word) {
+        return (HEX_PAIRS[(int) word & 0xFF] & 0xFFFFL)
+                | (HEX_PAIRS[(int) (word >>> 8) & 0xFF] & 0xFFFFL) << 16
+                | (HEX_PAIRS[(int) (word >>> 16) & 0xFF] & 0xFFFFL) << 32
+                | (HEX_PAIRS[(int) (word >>> 24) & 0xFF] & 0xFFFFL) << 48;
+    }
+
+    /**
+     * Parse hex digits until the end of the input or a terminating character, which is consumed.
+     *
+     * @throws IllegalArgumentException if there is an odd number of digits.
+     */
+    static void parseHex(@NotNull StreamingDataInput in, @NotNull StreamingDataOutput out)
+            throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        while (in.readRemaining() >= 16) {
+            long high = littleEndian(in.readLong());
+            long low = littleEndian(in.readLong());
+            if (!isHex(high) || !isHex(low)) {
+                in.readPosition(in.readPosition() - 16);
+                break;
+            }
+            out.writeInt(littleEndian(hexToInt(high)));
+            out.writeInt(littleEndian(hexToInt(low)));
+        }
+        while (in.readRemaining() > 0) {
+            int high = hexValue(in.readUnsignedByte());
+            if (high < 0)
+                return;
+            int low = in.readRemaining() > 0 ? hexValue(in.readUnsignedByte()) : -1;
+            if (low < 0)
+                throw new IllegalArgumentException("Odd number of hex digits before " + in.readPosition());
+            out.writeByte((byte) (high << 4 | low));
+        }
+    }
+
+    private static int hexValue(int ch) {
+        if (ch >= '0' && ch <= '9')
+            return ch - '0';
+        ch |= 0x20;
+        if (ch >= 'a' && ch <= 'f')
+            return ch - 'a' + 10;
+        return -1;
+    }
+
+    /*
+     * Whether all 8 bytes are 0-9, A-F or a-f
+     */
+    private static boolean isHex(long word) {
+        long lower = word | 0x2020202020202020L;
+        long digits = atLeast(word, '0') & atMost(word, '9');
+        long letters = atLeast(lower, 'a') & atMost(lower, 'f');
+        return (word & HIGH_BITS) == 0 && (digits | letters) == HIGH_BITS;
+    }
+
+    // the top bit of each byte below 0x80 is set when it's at least min.
+    private static long atLeast(long word, int min) {
+        return (word + ONES * (0x80 - min)) & HIGH_BITS;
+    }
+
+    // the top bit of each byte below 0x80 is set when it's at most max.
+    private static long atMost(long word, int max) {
+        return ~(word + ONES * (0x7F - max)) & HIGH_BITS;
+    }
+
+    /*
+     * Convert 8 hex digits in a little endian word to 4 bytes in a little endian int.
+     */
+    private static int hexToInt(long word) {
+        // only letters have bit 6 set.
+        long letters = (word >>> 6) & ONES;
+        long nibbles = (word & NIBBLES) + letters * 9;
+        long pairs = (nibbles << 4 | nibbles >>> 8) & 0x00FF00FF00FF00FFL;
+        pairs = (pairs | pairs >>> 8) & 0x0000FFFF0000FFFFL;
+        return (int) (pairs | pairs >>> 16);
+    }
+
+    static void appendBase64(@NotNull StreamingDataOutput out, @NotNull RandomDataInput in, long offset, long length)
+            throws IORuntimeException, BufferOverflowException, BufferUnderflowException {
+        long i = 0;
+        // read 8 bytes to encode 6.
+        for (; i <= length - 8; i += 6) {
+            long bits = Long.reverseBytes(littleEndian(in.readLong(offset + i)));
+            long chars = 0;
+            for (int j = 7; j >= 0; j--)
+                chars = chars << 8 | BASE64[(int) (bits >>> (58 - 6 * j)) & 63];
+            out.writeLong(littleEndian(chars));
+        }
+        for (; i <= length - 3; i += 3) {
+            int bits = in.readUnsignedByte(offset + i) << 16
+                    | in.readUnsignedByte(offset + i + 1) << 8
+                    | in.readUnsignedByte(offset + i + 2);
+            appendBase64(out, bits, 4);
+        }
+        if (i < length) {
+            int bits = in.readUnsignedByte(offset + i) << 16;
+            int chars = 2;
+            if (i + 1 < length) {
+                bits |= in.readUnsignedByte(offset + i + 1) << 8;
+                chars = 3;
+            }
+            appendBase64(out, bits, chars);
+            for (; chars < 4; chars++)
+                out.writeByte((byte) '=');
+        }
+    }
+
+    private static void appendBase64(@NotNull StreamingDataOutput out, int bits, int chars) {
+        for (int j = 0; j < chars; j++)
+            out.writeByte(BASE64[(bits >>> (18 - 6 * j)) & 63]);
+    }
+
+    /**
+     * Parse Base64 until the end of the input or a terminating character, which is consumed.
+     *
+     * @throws IllegalArgumentException if the last group of chars is incomplete.
+     */
+    static void parseBase64(@NotNull StreamingDataInput in, @NotNull StreamingDataOutput out)
+            throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        // leave the last group to the slow path as it might be padded.
+        while (in.readRemaining() > 8) {
+            long chars = littleEndian(in.readLong());
+            long bits = 0;
+            int invalid = 0;
+            for (int j = 0; j < 8; j++) {
+                int value = BASE64_VALUES[(int) (chars >>> (8 * j)) & 0xFF];
+                invalid |= value;
+                bits = bits << 6 | (value & 63);
+            }
+            if (invalid < 0) {
+                in.readPosition(in.readPosition() - 8);
+                break;
+            }
+            out.writeInt(bigEndian((int) (bits >>> 16)));
+            out.writeShort(bigEndian((short) bits));
+        }
+
+        int bits = 0, count = 0;
+        while (in.readRemaining() > 0) {
+            int ch = in.readUnsignedByte();
+            int value = BASE64_VALUES[ch];
+            if (value < 0) {
+                if (ch == '=') {
+                    // skip the rest of the padding
+                    while (in.readRemaining() > 0 && in.readUnsignedByte() == '=') {
+                    }
+                }
+                break;
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                out.writeByte((byte) (bits >>> 16));
+                out.writeByte((byte) (bits >>> 8));
+                out.writeByte((byte) bits);
+                bits = count = 0;
+            }
+        }
+        switch (count) {
+            case 0:
+                break;
+            case 2:
+                out.writeByte((byte) (bits >>> 4));
+                break;
+            case 3:
+                out.writeByte((byte) (bits >>> 10));
+                out.writeByte((byte) (bits >>> 2));
+                break;
+            default:
+                throw new IllegalArgumentException("Incomplete Base64 before " + in.readPosition());
+        }
+    }
+
+    private static long littleEndian(long word) {
+        return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    private static int littleEndian(int word) {
+        return IS_LITTLE_ENDIAN ? word : Integer.reverseBytes(word);
+    }
+
+    private static short littleEndian(short word) {
+        return IS_LITTLE_ENDIAN ? word : Short.reverseBytes(word);
+    }
+
+    private static int bigEndian(int word) {
+        return IS_LITTLE_ENDIAN ? Integer.reverseBytes(word) : word;
+    }
+
+    private static short bigEndian(short word) {
+        return IS_LITTLE_ENDIAN ? Short.reverseBytes(word) : word;
+    }
+}
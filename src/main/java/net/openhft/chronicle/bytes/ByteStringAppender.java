@@ -80,6 +80,36 @@ public interface ByteStringAppender<B extends ByteStringAppender<B>> extends Str
         return (B) this;
     }
 
+    /**
+     * Append an int in decimal
+     *
+     * @param value to append
+     * @return this
+     * @throws BufferUnderflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     */
+    @NotNull
+    default B append(int value) throws BufferOverflowException, IORuntimeException {
+        BytesInternal.append(this, value);
+        return (B) this;
+    }
+
+    /**
+     * Append a long in decimal, zero padded to a fixed width e.g. 7 with 3 digits is 007
+     *
+     * @param value  to append
+     * @param digits the width including any '-' sign
+     * @return this
+     * @throws BufferUnderflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     * @throws IllegalArgumentException if the value doesn't fit in the number of digits
+     */
+    @NotNull
+    default B appendZeroPadded(long value, int digits) throws BufferOverflowException, IORuntimeException, IllegalArgumentException {
+        BytesInternal.appendZeroPadded(this, value, digits);
+        return (B) this;
+    }
+
     /**
      * Append a float in decimal notation
      *
@@ -108,6 +138,21 @@ public interface ByteStringAppender<B extends ByteStringAppender<B>> extends Str
         return (B) this;
     }
 
+    /**
+     * Append a double rounded half away from zero to a fixed number of decimal places, e.g. for prices
+     *
+     * @param d             to append
+     * @param decimalPlaces to round to, between 0 and 18
+     * @return this
+     * @throws BufferUnderflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     */
+    @NotNull
+    default B append(double d, int decimalPlaces) throws BufferOverflowException, IORuntimeException {
+        BytesInternal.append((StreamingDataOutput) this, d, decimalPlaces);
+        return (B) this;
+    }
+
     /**
      * Append a portion of a String to the Bytes in UTF-8.
      *
@@ -187,4 +232,47 @@ public interface ByteStringAppender<B extends ByteStringAppender<B>> extends Str
         BytesInternal.appendTimeMillis(this, timeOfDayInMillis % 86400_000L);
         return (B) this;
     }
+
+    /**
+     * Append the readable bytes as upper case hexadecimal, two chars per byte.  The input is not
+     * consumed.
+     *
+     * @param bytes to encode
+     * @return this
+     * @throws BufferOverflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     */
+    @NotNull
+    default B appendHex(@NotNull BytesStore bytes) throws BufferOverflowException, IORuntimeException {
+        BinaryTextCodec.appendHex(this, bytes, bytes.readPosition(), bytes.readRemaining());
+        return (B) this;
+    }
+
+    /**
+     * Append the readable bytes as Base64 with padding.  The input is not consumed.
+     *
+     * @param bytes to encode
+     * @return this
+     * @throws BufferOverflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     */
+    @NotNull
+    default B appendBase64(@NotNull BytesStore bytes) throws BufferOverflowException, IORuntimeException {
+        BinaryTextCodec.appendBase64(this, bytes, bytes.readPosition(), bytes.readRemaining());
+        return (B) this;
+    }
+
+    /**
+     * Append a UTC timestamp in ISO-8601 format with nanoseconds e.g. 2016-03-01T12:34:56.123456789Z
+     *
+     * @param epochNanos the nanoseconds since 1970-01-01T00:00:00Z
+     * @return this
+     * @throws BufferOverflowException if the capacity of the underlying buffer was exceeded
+     * @throws IORuntimeException if an error occurred while attempting to resize the underlying buffer
+     */
+    @NotNull
+    default B appendDateTimeNanos(long epochNanos) throws BufferOverflowException, IORuntimeException {
+        IsoDateTime.append(this, epochNanos);
+        return (B) this;
+    }
 }
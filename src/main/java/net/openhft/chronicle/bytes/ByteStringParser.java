@@ -150,6 +150,34 @@ interface ByteStringParser<B extends ByteStringParser<B>> extends StreamingDataI
         return BytesInternal.parseDouble(this);
     }
 
+    /**
+     * parse hexadecimal text in either case into bytes. The terminating character is consumed.
+     * @param bytes to write the decoded bytes to
+     * @throws IllegalArgumentException if there is an odd number of digits.
+     */
+    default void parseHex(@NotNull StreamingDataOutput bytes) throws BufferOverflowException, IORuntimeException, IllegalArgumentException {
+        BinaryTextCodec.parseHex(this, bytes);
+    }
+
+    /**
+     * parse Base64 text into bytes. The terminating character is consumed.
+     * @param bytes to write the decoded bytes to
+     * @throws IllegalArgumentException if the last group of chars is incomplete.
+     */
+    default void parseBase64(@NotNull StreamingDataOutput bytes) throws BufferOverflowException, IORuntimeException, IllegalArgumentException {
+        BinaryTextCodec.parseBase64(this, bytes);
+    }
+
+    /**
+     * parse a UTC timestamp in ISO-8601 format e.g. 2016-03-01T12:34:56.123456789Z with up to 9
+     * digits of fraction. The terminating 'Z' is consumed.
+     * @return the nanoseconds since 1970-01-01T00:00:00Z
+     * @throws IllegalArgumentException if the text is not an ISO-8601 UTC timestamp.
+     */
+    default long parseDateTimeNanos() throws BufferUnderflowException, IORuntimeException, IllegalArgumentException {
+        return IsoDateTime.parse(this);
+    }
+
     /**
      * Skip text until a terminating character is reached.
      * @param tester to stop at
@@ -16,9 +16,11 @@
 
 package net.openhft.chronicle.bytes;
 
+import net.openhft.chronicle.bytes.util.CompiledStopCharTester;
 import net.openhft.chronicle.core.Jvm;
 import net.openhft.chronicle.core.Maths;
 import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
 import net.openhft.chronicle.core.annotation.ForceInline;
 import net.openhft.chronicle.core.annotation.NotNull;
 import net.openhft.chronicle.core.annotation.Nullable;
@@ -27,17 +29,17 @@ import net.openhft.chronicle.core.pool.EnumInterner;
 import net.openhft.chronicle.core.pool.StringBuilderPool;
 import net.openhft.chronicle.core.pool.StringInterner;
 import net.openhft.chronicle.core.util.StringUtils;
+import sun.misc.Unsafe;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.math.BigDecimal;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 
 import static net.openhft.chronicle.core.util.StringUtils.extractChars;
 import static net.openhft.chronicle.core.util.StringUtils.setCount;
@@ -49,17 +51,24 @@ import static net.openhft.chronicle.core.util.StringUtils.setCount;
 enum BytesInternal {
     ;
     static final char[] HEXI_DECIMAL = "0123456789ABCDEF".toCharArray();
+    static final long[] POWERS_OF_TEN = new long[19];
     private static final byte[] MIN_VALUE_TEXT = ("" + Long.MIN_VALUE).getBytes();
+    private static final byte[] INT_MIN_VALUE_TEXT = ("" + Integer.MIN_VALUE).getBytes();
+    // "00" to "99"
+    private static final byte[] DIGIT_PAIRS = new byte[200];
     private static final StringBuilderPool SBP = new StringBuilderPool();
     private static final StringInterner SI = new StringInterner(1024);
-    private static final byte[] Infinity = "Infinity".getBytes();
-    private static final byte[] NaN = "NaN".getBytes();
-    private static final long MAX_VALUE_DIVIDE_5 = Long.MAX_VALUE / 5;
-    private static final ThreadLocal<byte[]> NUMBER_BUFFER = ThreadLocal.withInitial(() -> new byte[20]);
-    private static final long MAX_VALUE_DIVIDE_10 = Long.MAX_VALUE / 10;
-    private static final ThreadLocal<DateCache> dateCacheTL = new ThreadLocal<>();
+    private static final Memory MEMORY = OS.memory();
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
 
     static {
+        long p = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++, p *= 10)
+            POWERS_OF_TEN[i] = p;
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
         try {
             ClassAliasPool.CLASS_ALIASES.addAlias(BytesStore.class, "!binary");
         } catch (Exception e) {
@@ -317,55 +326,135 @@ enum BytesInternal {
 
     public static void parseUTF_SB1(@NotNull Bytes bytes, @NotNull StringBuilder sb, int utflen)
             throws UTFDataFormatRuntimeException, BufferUnderflowException {
-        try {
-            int count = 0;
-            if (utflen > bytes.readRemaining())
-                throw new BufferUnderflowException();
-            NativeBytesStore nbs = (NativeBytesStore) bytes.bytesStore();
-            long address = nbs.address + nbs.translate(bytes.readPosition());
-            Memory memory = nbs.memory;
-            sb.ensureCapacity(utflen);
-            char[] chars = extractChars(sb);
-            while (count < utflen) {
-                int c = memory.readByte(address + count);
-                if (c < 0)
-                    break;
-                chars[count++] = (char) c;
-            }
-            bytes.readSkip(count);
-            setCount(sb, count);
-            if (count < utflen)
-                parseUTF2(bytes, sb, utflen, count);
-        } catch (IOException e) {
-            throw new AssertionError(e);
+        if (utflen > bytes.readRemaining())
+            throw new BufferUnderflowException();
+        NativeBytesStore nbs = (NativeBytesStore) bytes.bytesStore();
+        if (utflen > nativeReadRemaining(bytes, nbs)) {
+            parseUTF1(bytes, sb, utflen);
+            return;
         }
+        long address = nbs.address + nbs.translate(bytes.readPosition());
+        sb.ensureCapacity(utflen);
+        setCount(sb, parseUTF_SB2(nbs.memory, address, extractChars(sb), utflen));
+        bytes.readSkip(utflen);
     }
 
     public static void parseUTF_SB1(@NotNull NativeBytesStore bytes, long offset,
                                     @NotNull StringBuilder sb, int utflen)
             throws UTFDataFormatRuntimeException, BufferUnderflowException {
-        try {
-            if (offset + utflen > bytes.realCapacity())
-                throw new BufferUnderflowException();
-            long address = bytes.address + bytes.translate(offset);
-            Memory memory = bytes.memory;
-            sb.ensureCapacity(utflen);
-            char[] chars = extractChars(sb);
-            int count = 0;
-            while (count < utflen) {
-                int c = memory.readByte(address + count);
-                if (c < 0)
+        if (offset + utflen > bytes.realCapacity())
+            throw new BufferUnderflowException();
+        long address = bytes.address + bytes.translate(offset);
+        sb.ensureCapacity(utflen);
+        setCount(sb, parseUTF_SB2(bytes.memory, address, extractChars(sb), utflen));
+    }
+
+    /**
+     * Decode UTF-8 at an offset into a char[] at least <code>utflen</code> long.
+     *
+     * @return the number of chars decoded.
+     */
+    public static int parseUtf8(@NotNull RandomDataInput input, long offset, @NotNull char[] chars, int utflen)
+            throws UTFDataFormatRuntimeException, BufferUnderflowException {
+        if (offset + utflen > input.readLimit())
+            throw new BufferUnderflowException();
+        if (input instanceof BytesStore) {
+            BytesStore bs = ((BytesStore) input).bytesStore();
+            if (bs instanceof NativeBytesStore && offset >= bs.start() && offset + utflen <= bs.realCapacity()) {
+                NativeBytesStore nbs = (NativeBytesStore) bs;
+                return parseUTF_SB2(nbs.memory, nbs.address + nbs.translate(offset), chars, utflen);
+            }
+        }
+        CharBuffer buffer = CharBuffer.wrap(chars);
+        parseUTF1(input, offset, buffer, utflen);
+        return buffer.position();
+    }
+
+    /**
+     * Decode UTF-8 from native memory into a char[] at least <code>utflen</code> long.  Runs of
+     * ASCII are widened a word at a time, only multi-byte sequences are decoded a byte at a time.
+     * As with the byte at a time decoders, 4-byte sequences (code points above 0xFFFF) are not
+     * supported and throw a UTFDataFormatRuntimeException.
+     *
+     * @return the number of chars decoded.
+     */
+    private static int parseUTF_SB2(@NotNull Memory memory, long address, @NotNull char[] chars, int utflen)
+            throws UTFDataFormatRuntimeException {
+        int offset = 0, count = 0;
+        while (true) {
+            int ascii = parseAscii(memory, address + offset, chars, count, utflen - offset);
+            offset += ascii;
+            count += ascii;
+            if (offset >= utflen)
+                return count;
+
+            int c = memory.readByte(address + offset) & 0xFF;
+            switch (c >> 4) {
+                case 12:
+                case 13: {
+                /* 110x xxxx 10xx xxxx */
+                    if (offset + 2 > utflen)
+                        throw new UTFDataFormatRuntimeException(
+                                "malformed input: partial character at end");
+                    int char2 = memory.readByte(address + offset + 1) & 0xFF;
+                    if ((char2 & 0xC0) != 0x80)
+                        throw new UTFDataFormatRuntimeException(
+                                "malformed input around byte " + (offset + 2) + " was " + char2);
+                    chars[count++] = (char) (((c & 0x1F) << 6) |
+                            (char2 & 0x3F));
+                    offset += 2;
+                    break;
+                }
+
+                case 14: {
+                /* 1110 xxxx 10xx xxxx 10xx xxxx */
+                    if (offset + 3 > utflen)
+                        throw new UTFDataFormatRuntimeException(
+                                "malformed input: partial character at end");
+                    int char2 = memory.readByte(address + offset + 1) & 0xFF;
+                    int char3 = memory.readByte(address + offset + 2) & 0xFF;
+                    if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80))
+                        throw new UTFDataFormatRuntimeException(
+                                "malformed input around byte " + (offset + 2) + " was " + char2 + " " + char3);
+                    chars[count++] = (char) (((c & 0x0F) << 12) |
+                            ((char2 & 0x3F) << 6) |
+                            (char3 & 0x3F));
+                    offset += 3;
                     break;
-                chars[count++] = (char) c;
+                }
+                default:
+                /* 10xx xxxx, 1111 xxxx */
+                    throw new UTFDataFormatRuntimeException(
+                            "malformed input around byte " + offset);
             }
-            setCount(sb, count);
-            if (count < utflen)
-                parseUTF2(bytes, offset + count, offset + utflen, sb, utflen);
-        } catch (IOException e) {
-            throw new AssertionError(e);
         }
     }
 
+    /**
+     * Widen bytes into chars until the first byte with the top bit set, checking 8 bytes at a time.
+     *
+     * @return the number of ASCII bytes copied.
+     */
+    static int parseAscii(@NotNull Memory memory, long address, @NotNull char[] chars, int start, int length) {
+        int i = 0;
+        for (; i < length - 7; i += 8) {
+            long word = memory.readLong(address + i);
+            if ((word & 0x8080808080808080L) != 0)
+                break;
+            if (!IS_LITTLE_ENDIAN)
+                word = Long.reverseBytes(word);
+            for (int j = start + i; j < start + i + 8; j++, word >>>= 8)
+                chars[j] = (char) (word & 0x7F);
+        }
+        for (; i < length; i++) {
+            int c = memory.readByte(address + i);
+            if (c < 0)
+                break;
+            chars[start + i] = (char) c;
+        }
+        return i;
+    }
+
     public static int parse8bit_SB1(long offset, NativeBytesStore nbs, @NotNull StringBuilder sb, int utflen) {
         long address = nbs.address + nbs.translate(offset);
         Memory memory = nbs.memory;
@@ -586,6 +675,8 @@ enum BytesInternal {
     }
 
     static long findUTFLength(@NotNull CharSequence str) throws IndexOutOfBoundsException {
+        if (str instanceof String)
+            return findUTFLength(extractChars((String) str));
         int strlen = str.length();
         long utflen = strlen;/* use charAt instead of copying String to char array */
         for (int i = 0; i < strlen; i++) {
@@ -604,9 +695,21 @@ enum BytesInternal {
     }
 
     private static long findUTFLength(@NotNull char[] chars) {
-        int strlen = chars.length;
-        long utflen = strlen;/* use charAt instead of copying String to char array */
-        for (int i = 0; i < strlen; i++) {
+        return findUTFLength(chars, 0, chars.length);
+    }
+
+    static long findUTFLength(@NotNull char[] chars, int offset, int length) {
+        if (offset < 0 || offset + length > chars.length)
+            throw new IndexOutOfBoundsException();
+        long utflen = length;
+        int i = offset, end = offset + length;
+        // skip 4 ASCII chars at a time.
+        for (; i < end - 3; i += 4) {
+            long c4 = MEMORY.readLong(chars, Unsafe.ARRAY_CHAR_BASE_OFFSET + 2L * i);
+            if ((c4 & 0xFF80FF80FF80FF80L) != 0)
+                break;
+        }
+        for (; i < end; i++) {
             char c = chars[i];
             if (c <= 0x007F) {
                 continue;
@@ -633,6 +736,10 @@ enum BytesInternal {
     public static void appendUTF(@NotNull StreamingDataOutput bytes,
                                  @NotNull CharSequence str, int offset, int length)
             throws IndexOutOfBoundsException, IORuntimeException, BufferOverflowException {
+        if (str instanceof String) {
+            bytes.appendUtf8(extractChars((String) str), offset, length);
+            return;
+        }
         int i;
         for (i = 0; i < length; i++) {
             char c = str.charAt(offset + i);
@@ -989,12 +1096,45 @@ enum BytesInternal {
             out.writeByte((byte) '-');
             num = -num;
         }
-        if (num == 0) {
-            out.writeByte((byte) '0');
+        appendDigits(out, num, digitCount(num));
+    }
 
-        } else {
-            appendLong0(out, num);
+    public static void append(@NotNull ByteStringAppender out, int num) throws IORuntimeException, IllegalArgumentException, BufferOverflowException {
+        if (num < 0) {
+            if (num == Integer.MIN_VALUE) {
+                out.write(INT_MIN_VALUE_TEXT);
+                return;
+            }
+            out.writeByte((byte) '-');
+            num = -num;
         }
+        appendDigits(out, num, digitCount(num));
+    }
+
+    /**
+     * Append a number zero padded to a fixed width, including any '-' sign, e.g. for times and
+     * fixed width fields.
+     */
+    public static void appendZeroPadded(@NotNull StreamingDataOutput out, long num, int digits) throws IORuntimeException, IllegalArgumentException, BufferOverflowException {
+        if (num == Long.MIN_VALUE) {
+            if (digits < MIN_VALUE_TEXT.length)
+                numberTooLarge(digits);
+            out.writeByte((byte) '-');
+            for (int i = MIN_VALUE_TEXT.length; i < digits; i++)
+                out.writeByte((byte) '0');
+            out.write(MIN_VALUE_TEXT, 1, MIN_VALUE_TEXT.length - 1);
+            return;
+        }
+        boolean negative = num < 0;
+        int width = negative ? digits - 1 : digits;
+        num = Math.abs(num);
+        if (width < 1 || (width < POWERS_OF_TEN.length && num >= POWERS_OF_TEN[width]))
+            numberTooLarge(digits);
+        if (negative)
+            out.writeByte((byte) '-');
+        for (; width > POWERS_OF_TEN.length; width--)
+            out.writeByte((byte) '0');
+        appendDigits(out, num, width);
     }
 
     public static void prepend(@NotNull BytesPrepender out, long num) throws IORuntimeException, IllegalArgumentException, BufferOverflowException {
@@ -1007,10 +1147,15 @@ enum BytesInternal {
             neg = true;
             num = -num;
         }
-        do {
-            out.prewriteByte((byte) (num % 10 + '0'));
-            num /= 10;
-        } while (num > 0);
+        while (num >= 100) {
+            long q = num / 100;
+            out.prewriteShort(digitPair((int) (num - q * 100)));
+            num = q;
+        }
+        if (num >= 10)
+            out.prewriteShort(digitPair((int) num));
+        else
+            out.prewriteByte((byte) ('0' + num));
         if (neg)
             out.prewriteByte((byte) '-');
     }
@@ -1021,294 +1166,122 @@ enum BytesInternal {
      */
     public static void append(@NotNull RandomDataOutput out, long offset, long num, int digits) throws IORuntimeException, IllegalArgumentException, BufferOverflowException {
         boolean negative = num < 0;
+        int width = negative ? digits - 1 : digits;
         num = Math.abs(num);
-
-        for (int i = digits - 1; i > 0; i--) {
-            out.writeByte(offset + i, (byte) (num % 10 + '0'));
-            num /= 10;
-        }
-        if (negative) {
-            if (num != 0)
-                numberTooLarge(digits);
+        // Math.abs(Long.MIN_VALUE) is still negative.
+        if (width < 1 || num < 0 || (width < POWERS_OF_TEN.length && num >= POWERS_OF_TEN[width]))
+            numberTooLarge(digits);
+
+        long end = offset + digits;
+        for (; width > 1; width -= 2) {
+            long q = num / 100;
+            end -= 2;
+            out.writeShort(end, digitPair((int) (num - q * 100)));
+            num = q;
+        }
+        if (width > 0)
+            out.writeByte(end - 1, (byte) ('0' + num));
+        if (negative)
             out.writeByte(offset, '-');
-
-        } else {
-            if (num > 9)
-                numberTooLarge(digits);
-            out.writeByte(offset, (byte) (num % 10 + '0'));
-        }
     }
 
     private static void numberTooLarge(int digits) throws IllegalArgumentException {
-        throw new IllegalArgumentException("Number too large for " + digits + "digits");
-    }
-
-    private static void appendLong0(@NotNull StreamingDataOutput out, long num) throws IORuntimeException, IllegalArgumentException, BufferOverflowException {
-        byte[] numberBuffer = NUMBER_BUFFER.get();
-        // Extract digits into the end of the numberBuffer
-        int endIndex = appendLong1(numberBuffer, num);
-
-        // Bulk copy the digits into the front of the buffer
-        out.write(numberBuffer, endIndex, numberBuffer.length - endIndex);
-    }
-
-    private static int appendLong1(byte[] numberBuffer, long num) {
-        numberBuffer[19] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 19;
-        numberBuffer[18] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 18;
-        numberBuffer[17] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 17;
-        numberBuffer[16] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 16;
-        numberBuffer[15] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 15;
-        numberBuffer[14] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 14;
-        numberBuffer[13] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 13;
-        numberBuffer[12] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 12;
-        numberBuffer[11] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 11;
-        numberBuffer[10] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 10;
-        numberBuffer[9] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 9;
-        numberBuffer[8] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 8;
-        numberBuffer[7] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 7;
-        numberBuffer[6] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 6;
-        numberBuffer[5] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 5;
-        numberBuffer[4] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 4;
-        numberBuffer[3] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 3;
-        numberBuffer[2] = (byte) (num % 10L + '0');
-        num /= 10;
-        if (num <= 0)
-            return 2;
-        numberBuffer[1] = (byte) (num % 10L + '0');
-        return 1;
+        throw new IllegalArgumentException("Number too large for " + digits + " digits");
     }
 
-    public static void append(@NotNull StreamingDataOutput out, double d) throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
-        long val = Double.doubleToRawLongBits(d);
-        int sign = (int) (val >>> 63);
-        int exp = (int) ((val >>> 52) & 2047);
-        long mantissa = val & ((1L << 52) - 1);
-        if (sign != 0) {
-            out.writeByte((byte) '-');
-        }
-        if (exp == 0 && mantissa == 0) {
-            out.writeByte((byte) '0');
-            out.writeByte((byte) '.');
-            out.writeByte((byte) '0');
-            return;
+    /**
+     * @param num a positive number or zero
+     * @return the number of decimal digits needed to write it.
+     */
+    static int digitCount(long num) {
+        if (num < 10)
+            return 1;
+        // an estimate of log10 from log2 which is at most one too small.
+        int estimate = (63 - Long.numberOfLeadingZeros(num)) * 1233 >>> 12;
+        return estimate + 1 < POWERS_OF_TEN.length && num >= POWERS_OF_TEN[estimate + 1] ? estimate + 2 : estimate + 1;
+    }
 
-        } else if (exp == 2047) {
-            if (mantissa == 0) {
-                out.write(Infinity);
+    static int digitCount(int num) {
+        if (num < 10)
+            return 1;
+        int estimate = (31 - Integer.numberOfLeadingZeros(num)) * 1233 >>> 12;
+        return num >= POWERS_OF_TEN[estimate + 1] ? estimate + 2 : estimate + 1;
+    }
 
-            } else {
-                out.write(NaN);
-            }
+    /**
+     * Append exactly len digits, with leading zeros as required.
+     */
+    static void appendDigits(@NotNull StreamingDataOutput out, long num, int len) throws IORuntimeException, BufferOverflowException {
+        if (out instanceof VanillaBytes && ((VanillaBytes) out).bytesStore() instanceof NativeBytesStore) {
+            VanillaBytes bytes = (VanillaBytes) out;
+            long position = bytes.writePosition();
+            if (position + len > bytes.writeLimit())
+                throw new BufferOverflowException();
+            bytes.ensureCapacity(position + len);
+            NativeBytesStore store = (NativeBytesStore) bytes.bytesStore();
+            writeDigits(store.address + store.translate(position), num, len);
+            bytes.writeSkip(len);
             return;
+        }
 
-        } else if (exp > 0) {
-            mantissa += 1L << 52;
-        }
-        final int shift = (1023 + 52) - exp;
-        if (shift > 0) {
-            // integer and faction
-            if (shift < 53) {
-                long intValue = mantissa >> shift;
-                appendLong0(out, intValue);
-                mantissa -= intValue << shift;
-                if (mantissa > 0) {
-                    out.writeByte((byte) '.');
-                    mantissa <<= 1;
-                    mantissa++;
-                    int precision = shift + 1;
-                    long error = 1;
-
-                    long value = intValue;
-                    int decimalPlaces = 0;
-                    while (mantissa > error) {
-                        // times 5*2 = 10
-                        mantissa *= 5;
-                        error *= 5;
-                        precision--;
-                        long num = (mantissa >> precision);
-                        value = value * 10 + num;
-                        out.writeByte((byte) ('0' + num));
-                        mantissa -= num << precision;
-
-                        final double parsedValue = asDouble(value, 0, sign != 0, ++decimalPlaces);
-                        if (parsedValue == d)
-                            break;
-                    }
-                } else {
-                    out.writeByte((byte) '.');
-                    out.writeByte((byte) '0');
-                }
-                return;
-
-            } else {
-                // faction.
-                out.writeByte((byte) '0');
-                out.writeByte((byte) '.');
-                mantissa <<= 6;
-                mantissa += (1 << 5);
-                int precision = shift + 6;
-
-                long error = (1 << 5);
-
-                long value = 0;
-                int decimalPlaces = 0;
-                while (mantissa > error) {
-                    while (mantissa > MAX_VALUE_DIVIDE_5) {
-                        mantissa >>>= 1;
-                        error = (error + 1) >>> 1;
-                        precision--;
-                    }
-                    // times 5*2 = 10
-                    mantissa *= 5;
-                    error *= 5;
-                    precision--;
-                    if (precision >= 64) {
-                        decimalPlaces++;
-                        out.writeByte((byte) '0');
-                        continue;
-                    }
-                    long num = (mantissa >>> precision);
-                    value = value * 10 + num;
-                    final char c = (char) ('0' + num);
-                    assert !(c < '0' || c > '9');
-                    out.writeByte((byte) c);
-                    mantissa -= num << precision;
-                    final double parsedValue = asDouble(value, 0, sign != 0, ++decimalPlaces);
-                    if (parsedValue == d)
-                        break;
-                }
-                return;
-            }
+        int i = len;
+        if ((i & 1) != 0) {
+            long factor = POWERS_OF_TEN[--i];
+            int digit = (int) (num / factor);
+            out.writeByte((byte) ('0' + digit));
+            num -= digit * factor;
         }
-        // large number
-        mantissa <<= 10;
-        int precision = -10 - shift;
-        int digits = 0;
-        while ((precision > 53 || mantissa > Long.MAX_VALUE >> precision) && precision > 0) {
-            digits++;
-            precision--;
-            long mod = mantissa % 5;
-            mantissa /= 5;
-            int modDiv = 1;
-            while (mantissa < MAX_VALUE_DIVIDE_5 && precision > 1) {
-                precision -= 1;
-                mantissa <<= 1;
-                modDiv <<= 1;
-            }
-            mantissa += modDiv * mod / 5;
+        while (i > 0) {
+            i -= 2;
+            long factor = POWERS_OF_TEN[i];
+            int pair = (int) (num / factor);
+            out.writeByte(DIGIT_PAIRS[2 * pair]);
+            out.writeByte(DIGIT_PAIRS[2 * pair + 1]);
+            num -= pair * factor;
         }
-        long val2 = precision > 0 ? mantissa << precision : mantissa >>> -precision;
+    }
 
-        appendLong0(out, val2);
-        for (int i = 0; i < digits; i++)
-            out.writeByte((byte) '0');
+    /*
+     * Write len digits ending at address + len, two at a time and switching to int arithmetic as
+     * soon as the rest fits.
+     */
+    private static void writeDigits(long address, long num, int len) {
+        long end = address + len;
+        while (num > Integer.MAX_VALUE) {
+            long q = num / 100;
+            end -= 2;
+            MEMORY.writeShort(end, digitPair((int) (num - q * 100)));
+            num = q;
+        }
+        int n = (int) num;
+        while (end - address > 1) {
+            int q = n / 100;
+            end -= 2;
+            MEMORY.writeShort(end, digitPair(n - q * 100));
+            n = q;
+        }
+        if (end > address)
+            MEMORY.writeByte(address, (byte) ('0' + n));
+    }
+
+    /*
+     * The two chars of a number from 0 to 99 as they appear in memory.
+     */
+    @ForceInline
+    private static short digitPair(int pair) {
+        return MEMORY.readShort(DIGIT_PAIRS, Unsafe.ARRAY_BYTE_BASE_OFFSET + 2L * pair);
     }
 
-    private static double asDouble(long value, int exp, boolean negative, int decimalPlaces) {
-        if (decimalPlaces > 0 && value < Long.MAX_VALUE / 2) {
-            if (value < Long.MAX_VALUE / (1L << 32)) {
-                exp -= 32;
-                value <<= 32;
-            }
-            if (value < Long.MAX_VALUE / (1L << 16)) {
-                exp -= 16;
-                value <<= 16;
-            }
-            if (value < Long.MAX_VALUE / (1L << 8)) {
-                exp -= 8;
-                value <<= 8;
-            }
-            if (value < Long.MAX_VALUE / (1L << 4)) {
-                exp -= 4;
-                value <<= 4;
-            }
-            if (value < Long.MAX_VALUE / (1L << 2)) {
-                exp -= 2;
-                value <<= 2;
-            }
-            if (value < Long.MAX_VALUE / (1L << 1)) {
-                exp -= 1;
-                value <<= 1;
-            }
-        }
-        for (; decimalPlaces > 0; decimalPlaces--) {
-            exp--;
-            long mod = value % 5;
-            value /= 5;
-            int modDiv = 1;
-            if (value < Long.MAX_VALUE / (1L << 4)) {
-                exp -= 4;
-                value <<= 4;
-                modDiv <<= 4;
-            }
-            if (value < Long.MAX_VALUE / (1L << 2)) {
-                exp -= 2;
-                value <<= 2;
-                modDiv <<= 2;
-            }
-            if (value < Long.MAX_VALUE / (1L << 1)) {
-                exp -= 1;
-                value <<= 1;
-                modDiv <<= 1;
-            }
-            if (decimalPlaces > 1)
-                value += modDiv * mod / 5;
-            else
-                value += (modDiv * mod + 4) / 5;
-        }
-        final double d = Math.scalb((double) value, exp);
-        return negative ? -d : d;
+    public static void append(@NotNull StreamingDataOutput out, double d) throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        DoubleToDecimal.append(out, d);
+    }
+
+    public static void append(@NotNull StreamingDataOutput out, float f) throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        DoubleToDecimal.append(out, f);
+    }
+
+    public static void append(@NotNull StreamingDataOutput out, double d, int decimalPlaces) throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        DoubleToDecimal.append(out, d, decimalPlaces);
     }
 
     @Nullable
@@ -1352,6 +1325,7 @@ enum BytesInternal {
                                 @NotNull StopCharTester tester)
             throws BufferUnderflowException, IllegalStateException {
         try {
+            tester = compiled(tester);
             if (builder instanceof StringBuilder
                     && ((Bytes) bytes).bytesStore() instanceof NativeBytesStore) {
                 Bytes vb = (Bytes) bytes;
@@ -1372,28 +1346,69 @@ enum BytesInternal {
             throws IOException, IllegalArgumentException, IllegalStateException,
             BufferUnderflowException {
         NativeBytesStore nb = (NativeBytesStore) bytes.bytesStore();
-        int i = 0, len = Maths.toInt32(bytes.readRemaining());
+        int i = 0, len = nativeReadRemaining(bytes, nb);
         long address = nb.address + nb.translate(bytes.readPosition());
 
         Memory memory = nb.memory;
-        for (; i < len; i++) {
-            int c = memory.readByte(address + i);
-            if (c < 0)
-                break;
-            if (tester.isStopChar(c)) {
+        if (tester instanceof CompiledStopCharTester) {
+            i = ((CompiledStopCharTester) tester).scan(address, len, true);
+            append8bit(memory, address, appendable, i);
+            if (i < len && memory.readByte(address + i) >= 0) {
                 bytes.readSkip(i + 1);
                 return;
             }
-            appendable.append((char) c);
+        } else {
+            for (; i < len; i++) {
+                int c = memory.readByte(address + i);
+                if (c < 0)
+                    break;
+                if (tester.isStopChar(c)) {
+                    bytes.readSkip(i + 1);
+                    return;
+                }
+                appendable.append((char) c);
+            }
         }
         bytes.readSkip(i);
-        if (i < len) {
+        if (bytes.readRemaining() > 0) {
             readUTF_SB2(bytes, appendable, tester);
         }
     }
 
+    /**
+     * The number of bytes which can be read directly from the address of the read position.  A
+     * MappedBytesStore only covers part of the Bytes, and may not be the chunk the read position
+     * is in, in which case this is 0.
+     */
+    private static int nativeReadRemaining(@NotNull Bytes bytes, @NotNull NativeBytesStore nb) {
+        long position = bytes.readPosition();
+        if (position < nb.start() || position >= nb.realCapacity())
+            return 0;
+        return (int) Math.min(Integer.MAX_VALUE, Math.min(bytes.readRemaining(), nb.realCapacity() - position));
+    }
+
+    /**
+     * Widen a run of bytes, which are known not to need decoding, onto the end of a StringBuilder.
+     */
+    private static void append8bit(@NotNull Memory memory, long address, @NotNull StringBuilder sb, int length) {
+        int count = sb.length();
+        sb.ensureCapacity(count + length);
+        char[] chars = extractChars(sb);
+        for (int i = 0; i < length; i++)
+            chars[count + i] = (char) (memory.readByte(address + i) & 0xFF);
+        setCount(sb, count + length);
+    }
+
+    /**
+     * Use the cached lookup table for the built in testers.
+     */
+    @NotNull
+    private static StopCharTester compiled(@NotNull StopCharTester tester) {
+        return tester instanceof StopCharTesters ? tester.compiled() : tester;
+    }
+
     private static void readUTF_SB2(@NotNull StreamingDataInput bytes, @NotNull StringBuilder appendable, @NotNull StopCharTester tester) throws UTFDataFormatException, IORuntimeException {
-        while (true) {
+        while (bytes.readRemaining() > 0) {
             int c = bytes.readUnsignedByte();
             switch (c >> 4) {
                 case 0:
@@ -1563,6 +1578,20 @@ enum BytesInternal {
     }
 
     private static void read8bitAndAppend(@NotNull StreamingDataInput bytes, @NotNull StringBuilder appendable, @NotNull StopCharTester tester) throws IORuntimeException {
+        tester = compiled(tester);
+        if (tester instanceof CompiledStopCharTester && bytes.readRemaining() > 0
+                && bytes instanceof Bytes && ((Bytes) bytes).bytesStore() instanceof NativeBytesStore) {
+            NativeBytesStore nb = (NativeBytesStore) ((Bytes) bytes).bytesStore();
+            int len = nativeReadRemaining((Bytes) bytes, nb);
+            long address = nb.address + nb.translate(bytes.readPosition());
+            int i = ((CompiledStopCharTester) tester).scan(address, len, false);
+            append8bit(nb.memory, address, appendable, i);
+            // the stop character is consumed.
+            bytes.readSkip(i < len ? i + 1 : i);
+            // otherwise carry on past the end of what could be read directly.
+            if (i < len || bytes.readRemaining() == 0)
+                return;
+        }
         while (true) {
             int c = bytes.readUnsignedByte();
             if (tester.isStopChar(c))
@@ -1574,22 +1603,28 @@ enum BytesInternal {
     }
 
     private static void read8bitAndAppend(@NotNull StreamingDataInput bytes, @NotNull Bytes bytes2, @NotNull StopCharTester tester) throws IORuntimeException, BufferUnderflowException, IllegalArgumentException, BufferOverflowException {
-        int ch = bytes.readUnsignedByte();
-        do {
+        tester = compiled(tester);
+        if (tester instanceof CompiledStopCharTester && bytes.readRemaining() > 0
+                && bytes instanceof Bytes && ((Bytes) bytes).bytesStore() instanceof NativeBytesStore) {
+            Bytes in = (Bytes) bytes;
+            NativeBytesStore nb = (NativeBytesStore) in.bytesStore();
+            int len = nativeReadRemaining(in, nb);
+            long position = in.readPosition();
+            int i = ((CompiledStopCharTester) tester).scan(nb.address + nb.translate(position), len, false);
+            // the stop character is not consumed.
+            bytes2.write(in, position, i);
+            in.readSkip(i);
+            if (i < len)
+                return;
+        }
+        while (bytes.readRemaining() > 0) {
+            int ch = bytes.readUnsignedByte();
             if (tester.isStopChar(ch)) {
                 bytes.readSkip(-1);
                 return;
             }
             bytes2.writeUnsignedByte(ch);
-            int next = bytes.readUnsignedByte();
-            ch = next;
-        } while (bytes.readRemaining() > 1);
-
-        if (tester.isStopChar(ch)) {
-            bytes.readSkip(-1);
-            return;
         }
-        bytes2.writeUnsignedByte(ch);
     }
 
     private static void read8bitAndAppend(@NotNull StreamingDataInput bytes, @NotNull Bytes bytes2, @NotNull StopCharsTester tester) throws IORuntimeException, BufferUnderflowException, IllegalArgumentException, BufferOverflowException {
@@ -1612,10 +1647,8 @@ enum BytesInternal {
     }
 
     public static double parseDouble(@NotNull StreamingDataInput in) throws IORuntimeException, BufferUnderflowException {
-        long value = 0;
-        int exp = 0;
+        long start = in.readPosition();
         boolean negative = false;
-        int decimalPlaces = Integer.MIN_VALUE;
         int ch = in.readUnsignedByte();
         switch (ch) {
             case 'N':
@@ -1635,28 +1668,139 @@ enum BytesInternal {
                 negative = true;
                 ch = in.readUnsignedByte();
                 break;
+            case '+':
+                if (compareRest(in, "Infinity"))
+                    return Double.POSITIVE_INFINITY;
+                ch = in.readUnsignedByte();
+                break;
         }
+        // the first 19 significant digits as an unsigned long, times 10^scale
+        long value = 0;
+        int digits = 0, scale = 0;
+        boolean point = false, truncated = false;
         while (true) {
             if (ch >= '0' && ch <= '9') {
-                while (value >= MAX_VALUE_DIVIDE_10) {
-                    value >>>= 1;
-                    exp++;
+                if (digits < 19) {
+                    value = value * 10 + (ch - '0');
+                    if (value != 0)
+                        digits++;
+                    if (point)
+                        scale--;
+                    // there can be up to 8 leading zeros in the digit count.
+                    while (digits <= 11) {
+                        long eight = readEightBytes(in);
+                        if (!isEightDigits(eight))
+                            break;
+                        value = value * 100_000_000 + parseEightDigits(eight);
+                        if (value != 0)
+                            digits += 8;
+                        if (point)
+                            scale -= 8;
+                        in.readSkip(8);
+                    }
+                } else {
+                    if (ch != '0')
+                        truncated = true;
+                    if (!point)
+                        scale++;
                 }
-                value = value * 10 + (ch - '0');
-                decimalPlaces++;
 
-            } else if (ch == '.') {
-                decimalPlaces = 0;
+            } else if (ch == '.' && !point) {
+                point = true;
 
             } else {
                 break;
             }
-            if (in.readRemaining() == 0)
+            if (in.readRemaining() == 0) {
+                ch = -1;
                 break;
+            }
+            ch = in.readUnsignedByte();
+        }
+        long mantissaEnd = ch < 0 ? in.readPosition() : in.readPosition() - 1;
+
+        int exponent = 0;
+        if ((ch == 'e' || ch == 'E') && in.readRemaining() > 0) {
+            boolean negativeExponent = false;
             ch = in.readUnsignedByte();
+            if (ch == '-' || ch == '+') {
+                negativeExponent = ch == '-';
+                ch = in.readRemaining() > 0 ? in.readUnsignedByte() : -1;
+            }
+            while (ch >= '0' && ch <= '9') {
+                // larger exponents are all zero or infinity.
+                if (exponent < 100_000)
+                    exponent = exponent * 10 + ch - '0';
+                if (in.readRemaining() == 0)
+                    break;
+                ch = in.readUnsignedByte();
+            }
+            if (negativeExponent)
+                exponent = -exponent;
         }
 
-        return asDouble(value, exp, negative, decimalPlaces);
+        double d = DecimalToDouble.toDouble(value, scale + exponent, negative, truncated);
+        if (Double.isNaN(d))
+            d = parseDoubleExactly(in, start, mantissaEnd, exponent, negative);
+        return d;
+    }
+
+    /**
+     * Re-read the digits of a number which can't be converted from the first 19 significant digits.
+     */
+    private static double parseDoubleExactly(@NotNull StreamingDataInput in, long start, long mantissaEnd, int exponent, boolean negative)
+            throws IORuntimeException, BufferUnderflowException {
+        long end = in.readPosition();
+        in.readPosition(start);
+        StringBuilder sb = acquireStringBuilder();
+        while (in.readPosition() < mantissaEnd) {
+            int ch = in.readUnsignedByte();
+            if (ch >= '0' && ch <= '9' || ch == '.')
+                sb.append((char) ch);
+        }
+        in.readPosition(end);
+        double d = new BigDecimal(sb.toString()).scaleByPowerOfTen(exponent).doubleValue();
+        return negative ? -d : d;
+    }
+
+    /**
+     * @return the next 8 bytes in little endian order if they can be read directly from native
+     * memory, otherwise 0 which isn't 8 digits.
+     */
+    private static long readEightBytes(@NotNull StreamingDataInput in) {
+        if (in instanceof Bytes) {
+            Bytes bytes = (Bytes) in;
+            BytesStore bs = bytes.bytesStore();
+            if (bs instanceof NativeBytesStore) {
+                NativeBytesStore nbs = (NativeBytesStore) bs;
+                if (nativeReadRemaining(bytes, nbs) >= 8) {
+                    long word = nbs.memory.readLong(nbs.address + nbs.translate(bytes.readPosition()));
+                    return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return whether all 8 bytes of a little endian word are the digits 0 to 9
+     */
+    static boolean isEightDigits(long word) {
+        return ((word & 0xF0F0F0F0F0F0F0F0L)
+                | (((word + 0x0606060606060606L) & 0xF0F0F0F0F0F0F0F0L) >>> 4)) == 0x3333333333333333L;
+    }
+
+    /**
+     * Convert 8 digits in a little endian word with three multiplies rather than eight.
+     */
+    static int parseEightDigits(long word) {
+        long mask = 0x000000FF000000FFL;
+        long mul1 = 0x000F424000000064L; // 100 + (1000000 << 32)
+        long mul2 = 0x0000271000000001L; // 1 + (10000 << 32)
+        word -= 0x3030303030303030L;
+        word = (word * 10) + (word >>> 8);
+        word = (((word & mask) * mul1) + (((word >>> 16) & mask) * mul2)) >>> 32;
+        return (int) word;
     }
 
     static boolean compareRest(@NotNull StreamingDataInput in, @NotNull String s) throws IORuntimeException, BufferUnderflowException {
@@ -1676,11 +1820,22 @@ enum BytesInternal {
     public static long parseLong(@NotNull StreamingDataInput in) throws IORuntimeException, BufferUnderflowException {
         long num = 0;
         boolean negative = false;
+        boolean tryEight = true;
         while (in.readRemaining() > 0) {
             int b = in.readUnsignedByte();
             // if (b >= '0' && b <= '9')
             if ((b - ('0' + Integer.MIN_VALUE)) <= 9 + Integer.MIN_VALUE) {
                 num = num * 10 + b - '0';
+                // once there are less than 8 digits left, don't try again.
+                while (tryEight) {
+                    long eight = readEightBytes(in);
+                    if (!isEightDigits(eight)) {
+                        tryEight = false;
+                        break;
+                    }
+                    num = num * 100_000_000 + parseEightDigits(eight);
+                    in.readSkip(8);
+                }
             } else if (b == '-') {
                 negative = true;
             } else if (b == ']' || b == '}') {
@@ -1688,6 +1843,7 @@ enum BytesInternal {
                 break;
             } else if (b == '_') {
                 // ignore
+                tryEight = true;
             } else {
                 break;
             }
@@ -1698,19 +1854,65 @@ enum BytesInternal {
     public static long parseLong(@NotNull RandomDataInput in, long offset) throws IORuntimeException, BufferUnderflowException {
         long num = 0;
         boolean negative = false;
+        boolean tryEight = true;
         while (true) {
             int b = in.readUnsignedByte(offset++);
             // if (b >= '0' && b <= '9')
-            if ((b - ('0' + Integer.MIN_VALUE)) <= 9 + Integer.MIN_VALUE)
+            if ((b - ('0' + Integer.MIN_VALUE)) <= 9 + Integer.MIN_VALUE) {
                 num = num * 10 + b - '0';
-            else if (b == '-')
+                while (tryEight && offset + 8 <= in.readLimit()) {
+                    long eight = readLongLittleEndian(in, offset);
+                    if (!isEightDigits(eight))
+                        break;
+                    num = num * 100_000_000 + parseEightDigits(eight);
+                    offset += 8;
+                }
+                tryEight = false;
+            } else if (b == '-') {
                 negative = true;
-            else if (b != '_')
+            } else if (b == '_') {
+                tryEight = true;
+            } else {
                 break;
+            }
+        }
+        return negative ? -num : num;
+    }
+
+    /**
+     * Parse a number of exactly <code>digits</code> characters, as written by {@link
+     * #append(RandomDataOutput, long, long, int)}, i.e. zero padded with an optional leading '-'
+     *
+     * @throws IllegalArgumentException if any other character is found.
+     */
+    public static long parseLong(@NotNull RandomDataInput in, long offset, int digits) throws IORuntimeException, BufferUnderflowException, IllegalArgumentException {
+        long num = 0;
+        boolean negative = false;
+        int i = 0;
+        if (digits > 1 && in.readUnsignedByte(offset) == '-') {
+            negative = true;
+            i++;
+        }
+        for (; i <= digits - 8; i += 8) {
+            long eight = readLongLittleEndian(in, offset + i);
+            if (!isEightDigits(eight))
+                throw new IllegalArgumentException("Expected " + digits + " digits at " + offset);
+            num = num * 100_000_000 + parseEightDigits(eight);
+        }
+        for (; i < digits; i++) {
+            int b = in.readUnsignedByte(offset + i);
+            if (b < '0' || b > '9')
+                throw new IllegalArgumentException("Expected " + digits + " digits at " + offset);
+            num = num * 10 + b - '0';
         }
         return negative ? -num : num;
     }
 
+    private static long readLongLittleEndian(@NotNull RandomDataInput in, long offset) throws BufferUnderflowException, IORuntimeException {
+        long word = in.readLong(offset);
+        return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
     public static boolean skipTo(@NotNull ByteStringParser parser, @NotNull StopCharTester tester) throws IORuntimeException {
         while (parser.readRemaining() > 0) {
             int ch = parser.readUnsignedByte();
@@ -1893,19 +2095,7 @@ enum BytesInternal {
     }
 
     public static void appendDateMillis(@NotNull ByteStringAppender b, long timeInMS) throws IORuntimeException, BufferOverflowException {
-        DateCache dateCache = dateCacheTL.get();
-        if (dateCache == null) {
-            dateCacheTL.set(dateCache = new DateCache());
-        }
-        long date = timeInMS / 86400000;
-        if (dateCache.lastDay != date) {
-            dateCache.lastDateStr = dateCache.dateFormat.format(new Date(timeInMS)).getBytes(StandardCharsets.ISO_8859_1);
-            dateCache.lastDay = date;
-
-        } else {
-            assert dateCache.lastDateStr != null;
-        }
-        b.write(dateCache.lastDateStr);
+        IsoDateTime.appendDateMillis(b, timeInMS);
     }
 
     public static <E extends Enum<E>, S extends StreamingDataInput<S>> E readEnum(StreamingDataInput input, Class<E> eClass) throws BufferUnderflowException, IORuntimeException {
@@ -1988,15 +2178,4 @@ enum BytesInternal {
         }
         throw new IllegalArgumentException("Stop byte " + stopByte + " not found");
     }
-
-    static class DateCache {
-        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        private long lastDay = Long.MIN_VALUE;
-        @Nullable
-        private byte[] lastDateStr = null;
-
-        DateCache() {
-            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        }
-    }
 }
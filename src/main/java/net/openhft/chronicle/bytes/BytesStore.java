@@ -189,7 +189,7 @@ public interface BytesStore<B extends BytesStore<B, Underlying>, Underlying>
         if (end > capacity())
             throw new IllegalArgumentException(end + " > " + capacity());
         long i = start;
-        for (; i < end - 7; i++)
+        for (; i < end - 7; i += 8)
             writeLong(i, 0L);
         for (; i < end; i++)
             writeByte(i, 0);
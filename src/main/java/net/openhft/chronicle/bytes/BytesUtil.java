@@ -125,6 +125,15 @@ public enum BytesUtil {
         BytesInternal.parseUTF(in, appendable, utflen);
     }
 
+    /**
+     * Decode UTF-8 at an offset into a char[] at least <code>utflen</code> long.
+     *
+     * @return the number of chars decoded.
+     */
+    public static int parseUtf8(@NotNull RandomDataInput in, long offset, @NotNull char[] chars, int utflen) {
+        return BytesInternal.parseUtf8(in, offset, chars, utflen);
+    }
+
     public static void appendUtf8(@NotNull StreamingDataOutput out, @NotNull CharSequence cs) {
         BytesInternal.appendUTF(out, cs, 0, cs.length());
     }
@@ -0,0 +1,147 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import java.math.BigInteger;
+
+/**
+ * Converts up to 19 significant decimal digits and a power of ten to the nearest double using
+ * the Eisel-Lemire algorithm.  When the result can't be determined this way, NaN is returned and
+ * the caller should fall back to an exact conversion of the original text.
+ */
+enum DecimalToDouble {
+    ;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /*
+     * The 128-bit mantissa of each power of ten, rounded down, as the high and low 64 bits.
+     */
+    private static final int MIN_EXP10 = -348;
+    private static final int MAX_EXP10 = 347;
+    private static final long[] MANTISSAS = new long[2 * (MAX_EXP10 - MIN_EXP10 + 1)];
+
+    static {
+        BigInteger mask64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int e = MIN_EXP10; e <= MAX_EXP10; e++) {
+            // 10^e = 5^e 2^e so they have the same mantissa.
+            BigInteger m;
+            if (e >= 0) {
+                BigInteger n = BigInteger.valueOf(5).pow(e);
+                int shift = n.bitLength() - 128;
+                m = shift >= 0 ? n.shiftRight(shift) : n.shiftLeft(-shift);
+            } else {
+                BigInteger d = BigInteger.valueOf(5).pow(-e);
+                m = BigInteger.ONE.shiftLeft(127 + d.bitLength()).divide(d);
+            }
+            MANTISSAS[2 * (e - MIN_EXP10)] = m.shiftRight(64).longValue();
+            MANTISSAS[2 * (e - MIN_EXP10) + 1] = m.and(mask64).longValue();
+        }
+    }
+
+    /**
+     * @param value     the unsigned significant digits
+     * @param scale     the power of ten to multiply by
+     * @param negative  the sign
+     * @param truncated whether any non zero digits were dropped from the value
+     * @return the closest double or NaN if the original text is needed to decide.
+     */
+    static double toDouble(long value, int scale, boolean negative, boolean truncated) {
+        if (value == 0)
+            return negative ? -0.0 : 0.0;
+        if (!truncated && value > 0 && value < 1L << 53 && -POWERS_OF_TEN.length < scale && scale < POWERS_OF_TEN.length) {
+            // both are exact so the result is correctly rounded.
+            double d = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+            return negative ? -d : d;
+        }
+        // value < 10^19
+        if (scale < MIN_EXP10 - 19)
+            return negative ? -0.0 : 0.0;
+        if (scale > 308)
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+        double d = eiselLemire(value, scale, negative);
+        // the digits dropped could round either way.
+        if (truncated && d != eiselLemire(value + 1, scale, negative))
+            return Double.NaN;
+        return d;
+    }
+
+    private static double eiselLemire(long man, int exp10, boolean negative) {
+        if (exp10 < MIN_EXP10 || exp10 > MAX_EXP10)
+            return Double.NaN;
+        // normalize
+        int clz = Long.numberOfLeadingZeros(man);
+        man <<= clz;
+        long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+        // multiply
+        int index = 2 * (exp10 - MIN_EXP10);
+        long xHi = unsignedMultiplyHigh(man, MANTISSAS[index]);
+        long xLo = man * MANTISSAS[index];
+
+        // use a wider approximation if the result is too close to call.
+        if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0) {
+            long yHi = unsignedMultiplyHigh(man, MANTISSAS[index + 1]);
+            long yLo = man * MANTISSAS[index + 1];
+            long mergedHi = xHi, mergedLo = xLo + yHi;
+            if (Long.compareUnsigned(mergedLo, xLo) < 0)
+                mergedHi++;
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0)
+                return Double.NaN;
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        // shift to 54 bits
+        long msb = xHi >>> 63;
+        long retMantissa = xHi >>> (msb + 9);
+        retExp2 -= 1 ^ msb;
+
+        // half way between two doubles
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1)
+            return Double.NaN;
+
+        // round to 53 bits
+        retMantissa += retMantissa & 1;
+        retMantissa >>>= 1;
+        if ((retMantissa >>> 53) > 0) {
+            retMantissa >>>= 1;
+            retExp2++;
+        }
+        // subnormals, overflow and infinity are left to the exact conversion.
+        if (retExp2 <= 0 || retExp2 >= 0x7FF)
+            return Double.NaN;
+        long bits = retExp2 << 52 | retMantissa & ((1L << 52) - 1);
+        if (negative)
+            bits |= 1L << 63;
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        long high = x1 * y1 + z0 + (z1 >> 32);
+        // correct the signed result for unsigned inputs
+        return high + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+}
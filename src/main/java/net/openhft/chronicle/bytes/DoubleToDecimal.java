@@ -0,0 +1,344 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+
+import static net.openhft.chronicle.bytes.BytesInternal.POWERS_OF_TEN;
+import static net.openhft.chronicle.bytes.BytesInternal.appendDigits;
+import static net.openhft.chronicle.bytes.BytesInternal.digitCount;
+
+/**
+ * Appends the shortest decimal which reads back as the same double or float, using the Schubfach
+ * algorithm by Raffaello Giulietti.  No objects are created per call.
+ *
+ * <p>Numbers are written in plain notation without an exponent, as BytesInternal always has.
+ * Whole numbers below 2^53 have a <code>.0</code> suffix.
+ *
+ * <p>When rounding to a fixed number of decimal places, it is the shortest decimal which is
+ * rounded, half away from zero, so 2.675 to 2 places is "2.68" even though the double is a little
+ * less than 2.675, and -2.5 to 0 places is "-3".
+ */
+enum DoubleToDecimal {
+    ;
+    private static final byte[] INFINITY = "Infinity".getBytes();
+    private static final byte[] NAN = "NaN".getBytes();
+    private static final double WHOLE_SUFFIX_LIMIT = 0x1p53;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final int SHORTEST = -1;
+
+    // double precision parameters
+    private static final int D_Q_MIN = -1074;
+    private static final long D_C_MIN = 1L << 52;
+    private static final int D_C_TINY = 3;
+
+    // float precision parameters
+    private static final int F_Q_MIN = -149;
+    private static final long F_C_MIN = 1L << 23;
+    private static final int F_C_TINY = 8;
+
+    /*
+     * For each k, 10^-k = beta 2^r with 2^125 <= beta < 2^126, g = floor(beta) + 1 is held as the
+     * high 63 bits and low 63 bits.
+     */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        BigInteger mask63 = BigInteger.valueOf(MASK_63);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger floorBeta;
+            if (k <= 0) {
+                BigInteger n = BigInteger.TEN.pow(-k);
+                int r = n.bitLength() - 126;
+                floorBeta = r >= 0 ? n.shiftRight(r) : n.shiftLeft(-r);
+            } else {
+                BigInteger d = BigInteger.TEN.pow(k);
+                floorBeta = BigInteger.ONE.shiftLeft(125 + d.bitLength()).divide(d);
+            }
+            BigInteger g = floorBeta.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.and(mask63).longValue();
+        }
+    }
+
+    static void append(@NotNull StreamingDataOutput out, double d)
+            throws IORuntimeException, BufferOverflowException {
+        appendDouble(out, d, SHORTEST);
+    }
+
+    /*
+     * Append the shortest decimal, or round it to decimalPlaces if not SHORTEST.
+     */
+    private static void appendDouble(@NotNull StreamingDataOutput out, double d, int decimalPlaces) {
+        long bits = Double.doubleToRawLongBits(d);
+        boolean negative = bits < 0;
+        if (negative && decimalPlaces == SHORTEST)
+            out.writeByte((byte) '-');
+        long t = bits & (D_C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq == 0x7FF) {
+            out.write(t == 0 ? INFINITY : NAN);
+            return;
+        }
+        boolean wholeSuffix = Math.abs(d) < WHOLE_SUFFIX_LIMIT;
+        if (bq != 0) {
+            int mq = -D_Q_MIN + 1 - bq;
+            long c = D_C_MIN | t;
+            // whole numbers are already the shortest.
+            if (0 < mq && mq < 53) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    toChars(out, f, 0, true, decimalPlaces, negative);
+                    return;
+                }
+            }
+            toDecimal(out, -mq, c, 0, D_C_MIN, D_Q_MIN, wholeSuffix, decimalPlaces, negative);
+
+        } else if (t != 0) {
+            if (t < D_C_TINY)
+                toDecimal(out, D_Q_MIN, 10 * t, -1, D_C_MIN, D_Q_MIN, wholeSuffix, decimalPlaces, negative);
+            else
+                toDecimal(out, D_Q_MIN, t, 0, D_C_MIN, D_Q_MIN, wholeSuffix, decimalPlaces, negative);
+
+        } else if (decimalPlaces == SHORTEST) {
+            appendZero(out);
+
+        } else {
+            toFixed(out, 0, 0, decimalPlaces, false);
+        }
+    }
+
+    static void append(@NotNull StreamingDataOutput out, float f)
+            throws IORuntimeException, BufferOverflowException {
+        int bits = Float.floatToRawIntBits(f);
+        if (bits < 0)
+            out.writeByte((byte) '-');
+        long t = bits & (F_C_MIN - 1);
+        int bq = (bits >>> 23) & 0xFF;
+        if (bq == 0xFF) {
+            out.write(t == 0 ? INFINITY : NAN);
+            return;
+        }
+        boolean wholeSuffix = Math.abs(f) < WHOLE_SUFFIX_LIMIT;
+        if (bq != 0) {
+            int mq = -F_Q_MIN + 1 - bq;
+            long c = F_C_MIN | t;
+            if (0 < mq && mq < 24) {
+                long w = c >> mq;
+                if (w << mq == c) {
+                    toChars(out, w, 0, true);
+                    return;
+                }
+            }
+            toDecimal(out, -mq, c, 0, F_C_MIN, F_Q_MIN, wholeSuffix, SHORTEST, false);
+
+        } else if (t != 0) {
+            if (t < F_C_TINY)
+                toDecimal(out, F_Q_MIN, 10 * t, -1, F_C_MIN, F_Q_MIN, wholeSuffix, SHORTEST, false);
+            else
+                toDecimal(out, F_Q_MIN, t, 0, F_C_MIN, F_Q_MIN, wholeSuffix, SHORTEST, false);
+
+        } else {
+            appendZero(out);
+        }
+    }
+
+    /**
+     * Append a number rounded to a fixed number of decimal places, e.g. for prices.  The shortest
+     * decimal is rounded half away from zero.  Numbers too large to be scaled to a long, NaN and
+     * Infinity are appended as for {@link #append(StreamingDataOutput, double)}
+     */
+    static void append(@NotNull StreamingDataOutput out, double d, int decimalPlaces)
+            throws IORuntimeException, BufferOverflowException, IllegalArgumentException {
+        if (decimalPlaces < 0 || decimalPlaces >= POWERS_OF_TEN.length)
+            throw new IllegalArgumentException("decimalPlaces must be between 0 and " + (POWERS_OF_TEN.length - 1));
+        if (!(Math.abs(d) * POWERS_OF_TEN[decimalPlaces] < 1e18)) {
+            append(out, d);
+            return;
+        }
+        appendDouble(out, d, decimalPlaces);
+    }
+
+    private static void appendZero(@NotNull StreamingDataOutput out) {
+        out.writeByte((byte) '0');
+        out.writeByte((byte) '.');
+        out.writeByte((byte) '0');
+    }
+
+    /*
+     * Find the shortest decimal in the rounding interval of c 2^q, or the closest of the two
+     * candidates of the same length.  dk is -1 when c was scaled by 10 for tiny subnormals.
+     */
+    private static void toDecimal(@NotNull StreamingDataOutput out, int q, long c, int dk,
+                                  long cMin, int qMin, boolean wholeSuffix, int decimalPlaces, boolean negative) {
+        int odd = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != cMin | q == qMin) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        int index = 2 * (k - K_MIN);
+        long g1 = G[index];
+        long g0 = G[index + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // try one digit shorter first.
+            long sp10 = 10 * (s / 10);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + odd <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + odd <= vbr;
+            if (upin != wpin) {
+                toChars(out, upin ? sp10 : tp10, k, wholeSuffix, decimalPlaces, negative);
+                return;
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + odd <= s << 2;
+        boolean win = (t << 2) + odd <= vbr;
+        if (uin != win) {
+            toChars(out, uin ? s : t, k + dk, wholeSuffix, decimalPlaces, negative);
+            return;
+        }
+        long cmp = vb - (s + t << 1);
+        toChars(out, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, wholeSuffix, decimalPlaces, negative);
+    }
+
+    /*
+     * Round to odd of g cp 2^-127
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    // floor(log10(2^e))
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    // floor(log10(3/4 2^e))
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    // floor(log2(10^e))
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    private static void toChars(@NotNull StreamingDataOutput out, long f, int e, boolean wholeSuffix,
+                                int decimalPlaces, boolean negative) {
+        if (decimalPlaces == SHORTEST)
+            toChars(out, f, e, wholeSuffix);
+        else
+            toFixed(out, f, e, decimalPlaces, negative);
+    }
+
+    /*
+     * Append f 10^e rounded half away from zero to decimalPlaces, with a sign unless it rounds to 0.
+     */
+    private static void toFixed(@NotNull StreamingDataOutput out, long f, int e, int decimalPlaces, boolean negative) {
+        int shift = e + decimalPlaces;
+        long l;
+        if (shift >= 0) {
+            l = f * POWERS_OF_TEN[shift];
+        } else if (-shift < POWERS_OF_TEN.length) {
+            long divisor = POWERS_OF_TEN[-shift];
+            l = f / divisor;
+            if ((f - l * divisor) * 2 >= divisor)
+                l++;
+        } else {
+            // f has at most 17 digits so it is less than half of 10^-shift.
+            l = 0;
+        }
+        if (negative && l != 0)
+            out.writeByte((byte) '-');
+        long factor = POWERS_OF_TEN[decimalPlaces];
+        long whole = l / factor;
+        appendDigits(out, whole, digitCount(whole));
+        if (decimalPlaces > 0) {
+            out.writeByte((byte) '.');
+            appendDigits(out, l - whole * factor, decimalPlaces);
+        }
+    }
+
+    /*
+     * Append f 10^e in plain notation.
+     */
+    private static void toChars(@NotNull StreamingDataOutput out, long f, int e, boolean wholeSuffix) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int len = digitCount(f);
+        int point = len + e;
+        if (point <= 0) {
+            out.writeByte((byte) '0');
+            out.writeByte((byte) '.');
+            for (int i = point; i < 0; i++)
+                out.writeByte((byte) '0');
+            appendDigits(out, f, len);
+
+        } else if (point >= len) {
+            appendDigits(out, f, len);
+            for (int i = len; i < point; i++)
+                out.writeByte((byte) '0');
+            if (wholeSuffix) {
+                out.writeByte((byte) '.');
+                out.writeByte((byte) '0');
+            }
+
+        } else {
+            long factor = POWERS_OF_TEN[len - point];
+            long whole = f / factor;
+            appendDigits(out, whole, point);
+            out.writeByte((byte) '.');
+            appendDigits(out, f - whole * factor, len - point);
+        }
+    }
+}
@@ -131,6 +131,21 @@ public class HeapBytesStore<Underlying>
         return underlyingObject;
     }
 
+    /**
+     * @return the byte[] holding the data, for use with Unsafe and {@link #dataOffset()}
+     */
+    @NotNull
+    public Object realUnderlyingObject() {
+        return realUnderlyingObject;
+    }
+
+    /**
+     * @return the Unsafe offset of offset 0 in {@link #realUnderlyingObject()}
+     */
+    public long dataOffset() {
+        return dataOffset;
+    }
+
     @Override
     public boolean compareAndSwapInt(long offset, int expected, int value) {
         return MEMORY.compareAndSwapInt(realUnderlyingObject, dataOffset + offset, expected, value);
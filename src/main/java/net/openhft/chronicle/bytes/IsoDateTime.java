@@ -0,0 +1,212 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+
+import static net.openhft.chronicle.bytes.BytesInternal.appendDigits;
+import static net.openhft.chronicle.bytes.BytesInternal.isEightDigits;
+import static net.openhft.chronicle.bytes.BytesInternal.parseEightDigits;
+
+/**
+ * Appends and parses UTC timestamps in ISO-8601 format, <code>yyyy-MM-ddTHH:mm:ss.nnnnnnnnnZ</code>
+ * from nanoseconds since the epoch without creating objects, except for the text of the date
+ * which is cached once per day.
+ *
+ * <p>Dates are converted with the proleptic Gregorian calendar algorithms by Howard Hinnant.
+ */
+enum IsoDateTime {
+    ;
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_DAY = 86_400 * NANOS_PER_SECOND;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int DAYS_0000_TO_1970 = 719_468;
+    private static final int DAYS_PER_ERA = 146_097;
+
+    // the digits in "yyyy-MM-" and "ddTHH:mm" as little endian words.
+    private static final long DATE_DIGITS = 0x00FFFF00FFFFFFFFL;
+    private static final long DATE_SEPARATORS = 0x2D00002D00000000L;
+    private static final long TIME_DIGITS = 0xFFFF00FFFF00FFFFL;
+    private static final long TIME_SEPARATORS = 0x00003A0000540000L;
+    private static final long ZEROS = 0x3030303030303030L;
+
+    private static volatile DateCache dateCache = new DateCache(0);
+
+    static void append(@NotNull StreamingDataOutput out, long epochNanos)
+            throws IORuntimeException, BufferOverflowException {
+        long day = Math.floorDiv(epochNanos, NANOS_PER_DAY);
+        long nanosOfDay = epochNanos - day * NANOS_PER_DAY;
+        out.write(date(day));
+        out.writeByte((byte) 'T');
+        int secondOfDay = (int) (nanosOfDay / NANOS_PER_SECOND);
+        appendDigits(out, secondOfDay / 3600, 2);
+        out.writeByte((byte) ':');
+        appendDigits(out, secondOfDay / 60 % 60, 2);
+        out.writeByte((byte) ':');
+        appendDigits(out, secondOfDay % 60, 2);
+        out.writeByte((byte) '.');
+        appendDigits(out, nanosOfDay - secondOfDay * NANOS_PER_SECOND, 9);
+        out.writeByte((byte) 'Z');
+    }
+
+    /**
+     * Append the date as yyyyMMdd
+     */
+    static void appendDateMillis(@NotNull StreamingDataOutput out, long epochMillis)
+            throws IORuntimeException, BufferOverflowException {
+        byte[] date = date(Math.floorDiv(epochMillis, MILLIS_PER_DAY));
+        out.write(date, 0, 4);
+        out.write(date, 5, 2);
+        out.write(date, 8, 2);
+    }
+
+    /**
+     * Parse a timestamp as appended, with between 0 and 9 digits of fraction.  Digits beyond
+     * nanoseconds are ignored.
+     *
+     * @return the nanoseconds since the epoch.
+     * @throws IllegalArgumentException if the text is not an ISO-8601 UTC timestamp.
+     */
+    static long parse(@NotNull StreamingDataInput in)
+            throws IORuntimeException, BufferUnderflowException, IllegalArgumentException {
+        long position = in.readPosition();
+        long date = littleEndian(in.readLong());
+        long time = littleEndian(in.readLong());
+        // fill the separators with '0' to read each as 8 digits.
+        long dateDigits = (date & DATE_DIGITS) | (ZEROS & ~DATE_DIGITS);
+        long timeDigits = (time & TIME_DIGITS) | (ZEROS & ~TIME_DIGITS);
+        if ((date & ~DATE_DIGITS) != DATE_SEPARATORS || !isEightDigits(dateDigits)
+                || (time & ~TIME_DIGITS) != TIME_SEPARATORS || !isEightDigits(timeDigits))
+            throw notATimestamp(position);
+        // yyyy0MM0 and dd0HH0mm
+        int ymd = parseEightDigits(dateDigits);
+        int dhm = parseEightDigits(timeDigits);
+        int year = ymd / 10_000;
+        int month = ymd / 10 % 100;
+        int dayOfMonth = dhm / 1_000_000;
+        int hour = dhm / 1000 % 100;
+        int minute = dhm % 100;
+
+        if (in.readUnsignedByte() != ':')
+            throw notATimestamp(position);
+        int second = digit(in, position) * 10 + digit(in, position);
+
+        int ch = in.readUnsignedByte();
+        long nanos = 0;
+        if (ch == '.') {
+            int digits = 0;
+            if (in.readRemaining() >= 9) {
+                long eight = littleEndian(in.readLong());
+                if (isEightDigits(eight)) {
+                    nanos = parseEightDigits(eight);
+                    digits = 8;
+                } else {
+                    in.readPosition(in.readPosition() - 8);
+                }
+            }
+            while ((ch = in.readUnsignedByte()) >= '0' && ch <= '9') {
+                if (digits++ < 9)
+                    nanos = nanos * 10 + ch - '0';
+            }
+            for (; digits < 9; digits++)
+                nanos *= 10;
+        }
+        if (ch != 'Z' || month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59)
+            throw notATimestamp(position);
+
+        long secondOfDay = hour * 3600 + minute * 60 + second;
+        return daysFromCivil(year, month, dayOfMonth) * NANOS_PER_DAY + secondOfDay * NANOS_PER_SECOND + nanos;
+    }
+
+    private static int digit(@NotNull StreamingDataInput in, long position) {
+        int d = in.readUnsignedByte() - '0';
+        if (d < 0 || d > 9)
+            throw notATimestamp(position);
+        return d;
+    }
+
+    @NotNull
+    private static IllegalArgumentException notATimestamp(long position) {
+        return new IllegalArgumentException("Expected an ISO-8601 UTC timestamp at " + position);
+    }
+
+    private static long littleEndian(long word) {
+        return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    private static byte[] date(long day) {
+        DateCache cache = dateCache;
+        if (cache.day != day)
+            dateCache = cache = new DateCache(day);
+        return cache.text;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2)
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    static long daysFromCivil(int year, int month, int dayOfMonth) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /*
+     * The date text for one day.  This is immutable so it can be shared between threads.
+     */
+    static final class DateCache {
+        final long day;
+        final byte[] text = new byte[10];
+
+        DateCache(long day) {
+            this.day = day;
+            long z = day + DAYS_0000_TO_1970;
+            long era = Math.floorDiv(z, DAYS_PER_ERA);
+            long dayOfEra = z - era * DAYS_PER_ERA;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long mp = (5 * dayOfYear + 2) / 153;
+            int dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+            int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            if (year < 0 || year > 9999)
+                throw new IllegalArgumentException("Year " + year + " cannot be written as yyyy");
+            write(0, (int) (year / 100));
+            write(2, (int) (year % 100));
+            text[4] = '-';
+            write(5, month);
+            text[7] = '-';
+            write(8, dayOfMonth);
+        }
+
+        private void write(int index, int pair) {
+            text[index] = (byte) ('0' + pair / 10);
+            text[index + 1] = (byte) ('0' + pair % 10);
+        }
+    }
+}
@@ -23,17 +23,20 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.misc.Cleaner;
+import sun.misc.Unsafe;
 import sun.nio.ch.DirectBuffer;
 
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 @SuppressWarnings("sunapi")
 public class NativeBytesStore<Underlying>
         implements BytesStore<NativeBytesStore<Underlying>, Underlying> {
     private static final long MEMORY_MAPPED_SIZE = 128 << 10;
     private static final Logger LOGGER = LoggerFactory.getLogger(NativeBytesStore.class);
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
 
     @Nullable
     private Cleaner cleaner;
@@ -480,7 +483,7 @@ public class NativeBytesStore<Underlying>
         this.memory.copyMemory(address, address(position), size);
     }
 
-    void write8bit(long position, char[] chars, int offset, int length) {
+    protected void write8bit(long position, char[] chars, int offset, int length) {
         long addr = address + translate(position);
         Memory memory = this.memory;
         for (int i = 0; i < length; i++)
@@ -525,21 +528,39 @@ public class NativeBytesStore<Underlying>
     }
 
     public long appendUtf8(long pos, char[] chars, int offset, int length) {
-        long address = this.address + translate(0);
+        int i = appendAscii(pos, chars, offset, length);
+        if (i == length)
+            return pos + i;
+        return appendUTF0(pos + i, chars, offset, length, i);
+    }
+
+    /**
+     * Copy chars up to the first which is not ASCII, narrowing 4 chars at a time where possible.
+     *
+     * @return the number of chars copied, one byte each.
+     */
+    public int appendAscii(long pos, char[] chars, int offset, int length) {
+        if (offset < 0 || offset + length > chars.length)
+            throw new IndexOutOfBoundsException();
+        long address = this.address + translate(pos);
         Memory memory = this.memory;
-        int i;
-        ascii:
-        {
-            for (i = 0; i < length; i++) {
-                char c = chars[offset + i];
-                if (c > 0x007F)
-                    break ascii;
-                memory.writeByte(address + pos++, (byte) c);
+        int i = 0;
+        if (IS_LITTLE_ENDIAN) {
+            for (; i < length - 3; i += 4) {
+                long c4 = memory.readLong(chars, Unsafe.ARRAY_CHAR_BASE_OFFSET + 2L * (offset + i));
+                if ((c4 & 0xFF80FF80FF80FF80L) != 0)
+                    break;
+                int b4 = ((int) (c4 | (c4 >>> 8)) & 0xFFFF) | ((int) ((c4 >>> 32) | (c4 >>> 40)) << 16);
+                memory.writeInt(address + i, b4);
             }
-
-            return pos;
         }
-        return appendUTF0(pos, chars, offset, length, i);
+        for (; i < length; i++) {
+            char c = chars[offset + i];
+            if (c > 0x007F)
+                break;
+            memory.writeByte(address + i, (byte) c);
+        }
+        return i;
     }
 
     private long appendUTF0(long pos, char[] chars, int offset, int length, int i) {
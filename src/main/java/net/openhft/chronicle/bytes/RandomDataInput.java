@@ -260,6 +260,18 @@ public interface RandomDataInput extends RandomCommon {
         return BytesInternal.parseLong(this, offset);
     }
 
+    /**
+     * Parse a fixed width number as written by {@link RandomDataOutput#append(long, long, int)}
+     *
+     * @param offset of the first character
+     * @param digits the width of the field including any '-'
+     * @return the number
+     * @throws IllegalArgumentException if the field contains anything else
+     */
+    default long parseLong(long offset, int digits) throws BufferUnderflowException, IORuntimeException, IllegalArgumentException {
+        return BytesInternal.parseLong(this, offset, digits);
+    }
+
     /**
      * expert level method for copying data to native memory.
      *
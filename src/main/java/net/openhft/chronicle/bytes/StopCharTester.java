@@ -16,6 +16,7 @@
 
 package net.openhft.chronicle.bytes;
 
+import net.openhft.chronicle.bytes.util.CompiledStopCharTester;
 import net.openhft.chronicle.bytes.util.EscapingStopCharTester;
 import org.jetbrains.annotations.NotNull;
 
@@ -41,4 +42,16 @@ public interface StopCharTester {
     default StopCharTester escaping() {
         return new EscapingStopCharTester(this);
     }
+
+    /**
+     * Compile this tester into a lookup table so parsing can scan runs of bytes rather than call
+     * this tester for each one.  This assumes the tester is stateless, so the result should be
+     * created once and reused.
+     *
+     * @return a table driven tester with the same results.
+     */
+    @NotNull
+    default StopCharTester compiled() {
+        return CompiledStopCharTester.compile(this);
+    }
 }
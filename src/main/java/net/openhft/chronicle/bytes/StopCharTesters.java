@@ -16,6 +16,9 @@
 
 package net.openhft.chronicle.bytes;
 
+import net.openhft.chronicle.bytes.util.CompiledStopCharTester;
+import org.jetbrains.annotations.NotNull;
+
 /**
  * @author peter.lawrey
  */
@@ -55,5 +58,16 @@ public enum StopCharTesters implements StopCharTester {
         public boolean isStopChar(int ch) {
             return ch < 0;
         }
+    };
+
+    private StopCharTester compiled;
+
+    @NotNull
+    @Override
+    public StopCharTester compiled() {
+        StopCharTester compiled = this.compiled;
+        if (compiled == null)
+            this.compiled = compiled = CompiledStopCharTester.compile(this);
+        return compiled;
     }
 }
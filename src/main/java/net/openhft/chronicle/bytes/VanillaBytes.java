@@ -255,9 +255,17 @@ public class VanillaBytes<Underlying> extends AbstractBytes<Underlying>
     @Override
     public VanillaBytes<Underlying> appendUtf8(char[] chars, int offset, int length)
             throws BufferOverflowException, IllegalArgumentException, IORuntimeException {
-        ensureCapacity(readPosition() + length);
         if (bytesStore instanceof NativeBytesStore) {
-            writePosition(((NativeBytesStore) bytesStore).appendUTF(writePosition(), chars, offset, length));
+            long position = writePosition();
+            ensureCapacity(position + length);
+            int ascii = ((NativeBytesStore) bytesStore).appendAscii(position, chars, offset, length);
+            position += ascii;
+            if (ascii < length) {
+                // the rest can take up to three bytes per char.
+                ensureCapacity(position + BytesInternal.findUTFLength(chars, offset + ascii, length - ascii));
+                position = ((NativeBytesStore) bytesStore).appendUtf8(position, chars, offset + ascii, length - ascii);
+            }
+            writePosition(position);
         } else {
             super.appendUtf8(chars, offset, length);
         }
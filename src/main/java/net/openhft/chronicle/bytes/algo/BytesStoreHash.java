@@ -18,6 +18,7 @@ package net.openhft.chronicle.bytes.algo;
 
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.HeapBytesStore;
 import net.openhft.chronicle.bytes.NativeBytesStore;
 import net.openhft.chronicle.bytes.VanillaBytes;
 
@@ -32,7 +33,7 @@ public interface BytesStoreHash<B extends BytesStore> extends ToLongFunction<B>
     }
 
     static long hash(BytesStore b) {
-        return b instanceof Bytes && b.bytesStore() instanceof NativeBytesStore
+        return b instanceof Bytes && isOptimised(b.bytesStore())
                 ? OptimisedBytesStoreHash.INSTANCE.applyAsLong((Bytes) b)
                 : VanillaBytesStoreHash.INSTANCE.applyAsLong(b);
     }
@@ -43,7 +44,7 @@ public interface BytesStoreHash<B extends BytesStore> extends ToLongFunction<B>
     }
 
     static long hash(Bytes b, int length) {
-        return b.bytesStore() instanceof NativeBytesStore
+        return isOptimised(b.bytesStore())
                 ? OptimisedBytesStoreHash.INSTANCE.applyAsLong(b, length)
                 : VanillaBytesStoreHash.INSTANCE.applyAsLong(b, length);
     }
@@ -53,4 +54,11 @@ public interface BytesStoreHash<B extends BytesStore> extends ToLongFunction<B>
         return (int) (hash ^ (hash >>> 32));
     }
 
+    /**
+     * @return whether OptimisedBytesStoreHash can read this store directly, giving the same result
+     * as VanillaBytesStoreHash.
+     */
+    static boolean isOptimised(BytesStore bytesStore) {
+        return bytesStore instanceof NativeBytesStore || bytesStore instanceof HeapBytesStore;
+    }
 }
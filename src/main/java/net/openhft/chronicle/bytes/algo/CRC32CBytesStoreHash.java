@@ -0,0 +1,117 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+
+import static net.openhft.chronicle.bytes.algo.OptimisedBytesStoreHash.MEMORY;
+
+/**
+ * The CRC-32C (Castagnoli) checksum of the readable bytes, as used by iSCSI, ext4 and many storage
+ * formats, returned as an unsigned 32-bit value.  This is computed eight bytes at a time with
+ * slicing-by-8 tables, reading native stores, and mapped stores when the current chunk holds all
+ * the bytes, directly by address.
+ */
+public enum CRC32CBytesStoreHash implements BytesStoreHash<BytesStore> {
+    INSTANCE;
+
+    private static final int POLY = 0x82F63B78;
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    // eight tables of 256, each advancing the CRC one more byte.
+    private static final int[] TABLE = new int[8 * 256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++)
+                crc = (crc >>> 1) ^ (POLY & -(crc & 1));
+            TABLE[i] = crc;
+        }
+        for (int i = 256; i < TABLE.length; i++) {
+            int crc = TABLE[i - 256];
+            TABLE[i] = (crc >>> 8) ^ TABLE[crc & 0xFF];
+        }
+    }
+
+    @Override
+    public long applyAsLong(@NotNull BytesStore store) {
+        return update(0, store, store.readPosition(), store.readRemaining()) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Continue a CRC-32C with more bytes so a checksum can be built up from pieces.
+     *
+     * @param crc    the checksum so far, 0 to start.
+     * @param in     to read
+     * @param offset of the first byte
+     * @param length of the bytes to add
+     * @return the checksum including these bytes.
+     */
+    public static int update(int crc, @NotNull RandomDataInput in, long offset, long length) {
+        BytesStore underlying = in instanceof BytesStore ? ((BytesStore) in).bytesStore() : null;
+        // a mapped chunk may not hold all the bytes.
+        return underlying instanceof NativeBytesStore
+                && offset >= underlying.start() && offset + length <= underlying.realCapacity()
+                ? updateNative(crc, ((NativeBytesStore) underlying).address(offset), length)
+                : updateAny(crc, in, offset, length);
+    }
+
+    static int updateNative(int crc, long address, long length) {
+        crc = ~crc;
+        long end = address + length;
+        for (; address <= end - 8; address += 8)
+            crc = update8(crc, littleEndian(MEMORY.readLong(address)));
+        for (; address < end; address++)
+            crc = (crc >>> 8) ^ TABLE[(crc ^ MEMORY.readByte(address)) & 0xFF];
+        return ~crc;
+    }
+
+    static int updateAny(int crc, @NotNull RandomDataInput in, long offset, long length) {
+        crc = ~crc;
+        long end = offset + length;
+        for (; offset <= end - 8; offset += 8)
+            crc = update8(crc, littleEndian(in.readLong(offset)));
+        for (; offset < end; offset++)
+            crc = (crc >>> 8) ^ TABLE[(crc ^ in.readByte(offset)) & 0xFF];
+        return ~crc;
+    }
+
+    private static long littleEndian(long word) {
+        return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    /*
+     * Add eight bytes, the first in the lowest bits.
+     */
+    private static int update8(int crc, long l) {
+        int lo = (int) l ^ crc;
+        int hi = (int) (l >>> 32);
+        return TABLE[7 * 256 + (lo & 0xFF)]
+                ^ TABLE[6 * 256 + ((lo >>> 8) & 0xFF)]
+                ^ TABLE[5 * 256 + ((lo >>> 16) & 0xFF)]
+                ^ TABLE[4 * 256 + (lo >>> 24)]
+                ^ TABLE[3 * 256 + (hi & 0xFF)]
+                ^ TABLE[2 * 256 + ((hi >>> 8) & 0xFF)]
+                ^ TABLE[256 + ((hi >>> 16) & 0xFF)]
+                ^ TABLE[hi >>> 24];
+    }
+}
@@ -17,11 +17,13 @@
 package net.openhft.chronicle.bytes.algo;
 
 import net.openhft.chronicle.bytes.Bytes;
-import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.HeapBytesStore;
 import net.openhft.chronicle.core.Maths;
 import net.openhft.chronicle.core.Memory;
 import net.openhft.chronicle.core.OS;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteOrder;
 
@@ -38,17 +40,17 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
     private static final int TOP_BYTES = IS_LITTLE_ENDIAN ? 4 : 0;
 
     static long applyAsLong1to7(@NotNull Bytes store, int remaining) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
+        final Object base = base(store);
+        final long address = address(store);
 
-        return hash(readIncompleteLong(address, remaining));
+        return hash(readIncompleteLong(base, address, remaining));
     }
 
     static long applyAsLong8(@NotNull Bytes store) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
+        final Object base = base(store);
+        final long address = address(store);
 
-        return hash0(MEMORY.readLong(address), MEMORY.readInt(address + TOP_BYTES));
+        return hash0(MEMORY.readLong(base, address), MEMORY.readInt(base, address + TOP_BYTES));
     }
 
     public static long hash(long l) {
@@ -60,16 +62,16 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
     }
 
     static long applyAsLong9to16(@NotNull Bytes store, int remaining) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
+        final Object base = base(store);
+        final long address = address(store);
         long h0 = (long) remaining * K0;
 
         int left = remaining;
         long addrI = address;
 
-        long l0 = readIncompleteLong(addrI, left);
+        long l0 = readIncompleteLong(base, addrI, left);
         int l0a = (int) (l0 >> 32);
-        long l1 = readIncompleteLong(addrI + 8, left - 8);
+        long l1 = readIncompleteLong(base, addrI + 8, left - 8);
         int l1a = (int) (l1 >> 32);
         final long l2 = 0;
         final int l2a = 0;
@@ -86,20 +88,20 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
     }
 
     static long applyAsLong17to32(@NotNull Bytes store, int remaining) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
+        final Object base = base(store);
+        final long address = address(store);
         long h0 = (long) remaining * K0;
 
         int left = remaining;
         long addrI = address;
 
-        long l0 = MEMORY.readLong(addrI);
-        int l0a = MEMORY.readInt(addrI + TOP_BYTES);
-        long l1 = MEMORY.readLong(addrI + 8);
-        int l1a = MEMORY.readInt(addrI + 8 + TOP_BYTES);
-        long l2 = readIncompleteLong(addrI + 16, left - 16);
+        long l0 = MEMORY.readLong(base, addrI);
+        int l0a = MEMORY.readInt(base, addrI + TOP_BYTES);
+        long l1 = MEMORY.readLong(base, addrI + 8);
+        int l1a = MEMORY.readInt(base, addrI + 8 + TOP_BYTES);
+        long l2 = readIncompleteLong(base, addrI + 16, left - 16);
         int l2a = (int) (l2 >> 32);
-        long l3 = readIncompleteLong(addrI + 24, left - 24);
+        long l3 = readIncompleteLong(base, addrI + 24, left - 24);
         int l3a = (int) (l3 >> 32);
 
         h0 += (l0 + l1a - l2a) * M0;
@@ -112,9 +114,9 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
     }
 
     public static long applyAsLong32bytesMultiple(@NotNull Bytes store, int remaining) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
-        long h0 = remaining * K0, h1 = 0, h2 = 0, h3 = 0;
+        final Object base = base(store);
+        final long address = address(store);
+        long h0 = (long) remaining * K0, h1 = 0, h2 = 0, h3 = 0;
 
         int i;
         for (i = 0; i < remaining - 31; i += 32) {
@@ -125,14 +127,14 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
                 h3 *= K3;
             }
             long addrI = address + i;
-            long l0 = MEMORY.readLong(addrI);
-            int l0a = MEMORY.readInt(addrI + TOP_BYTES);
-            long l1 = MEMORY.readLong(addrI + 8);
-            int l1a = MEMORY.readInt(addrI + 8 + TOP_BYTES);
-            long l2 = MEMORY.readLong(addrI + 16);
-            int l2a = MEMORY.readInt(addrI + 16 + TOP_BYTES);
-            long l3 = MEMORY.readLong(addrI + 24);
-            int l3a = MEMORY.readInt(addrI + 24 + TOP_BYTES);
+            long l0 = MEMORY.readLong(base, addrI);
+            int l0a = MEMORY.readInt(base, addrI + TOP_BYTES);
+            long l1 = MEMORY.readLong(base, addrI + 8);
+            int l1a = MEMORY.readInt(base, addrI + 8 + TOP_BYTES);
+            long l2 = MEMORY.readLong(base, addrI + 16);
+            int l2a = MEMORY.readInt(base, addrI + 16 + TOP_BYTES);
+            long l3 = MEMORY.readLong(base, addrI + 24);
+            int l3a = MEMORY.readInt(base, addrI + 24 + TOP_BYTES);
 
             h0 += (l0 + l1a - l2a) * M0;
             h1 += (l1 + l2a - l3a) * M1;
@@ -145,8 +147,8 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
     }
 
     public static long applyAsLongAny(@NotNull Bytes store, int remaining) {
-        final NativeBytesStore bytesStore = (NativeBytesStore) store.bytesStore();
-        final long address = bytesStore.address(store.readPosition());
+        final Object base = base(store);
+        final long address = address(store);
         long h0 = (long) remaining * K0, h1 = 0, h2 = 0, h3 = 0;
 
         int i;
@@ -158,14 +160,14 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
                 h3 *= K3;
             }
             long addrI = address + i;
-            long l0 = MEMORY.readLong(addrI);
-            int l0a = MEMORY.readInt(addrI + TOP_BYTES);
-            long l1 = MEMORY.readLong(addrI + 8);
-            int l1a = MEMORY.readInt(addrI + 8 + TOP_BYTES);
-            long l2 = MEMORY.readLong(addrI + 16);
-            int l2a = MEMORY.readInt(addrI + 16 + TOP_BYTES);
-            long l3 = MEMORY.readLong(addrI + 24);
-            int l3a = MEMORY.readInt(addrI + 24 + TOP_BYTES);
+            long l0 = MEMORY.readLong(base, addrI);
+            int l0a = MEMORY.readInt(base, addrI + TOP_BYTES);
+            long l1 = MEMORY.readLong(base, addrI + 8);
+            int l1a = MEMORY.readInt(base, addrI + 8 + TOP_BYTES);
+            long l2 = MEMORY.readLong(base, addrI + 16);
+            int l2a = MEMORY.readInt(base, addrI + 16 + TOP_BYTES);
+            long l3 = MEMORY.readLong(base, addrI + 24);
+            int l3a = MEMORY.readInt(base, addrI + 24 + TOP_BYTES);
 
             h0 += (l0 + l1a - l2a) * M0;
             h1 += (l1 + l2a - l3a) * M1;
@@ -183,9 +185,9 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
             long addrI = address + i;
             if (left <= 16) {
 
-                long l0 = readIncompleteLong(addrI, left);
+                long l0 = readIncompleteLong(base, addrI, left);
                 int l0a = (int) (l0 >> 32);
-                long l1 = readIncompleteLong(addrI + 8, left - 8);
+                long l1 = readIncompleteLong(base, addrI + 8, left - 8);
                 int l1a = (int) (l1 >> 32);
                 final long l2 = 0;
                 final int l2a = 0;
@@ -198,13 +200,13 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
                 h3 += (l3 + l0a - l1a) * M3;
 
             } else {
-                long l0 = MEMORY.readLong(addrI);
-                int l0a = MEMORY.readInt(addrI + TOP_BYTES);
-                long l1 = MEMORY.readLong(addrI + 8);
-                int l1a = MEMORY.readInt(addrI + 8 + TOP_BYTES);
-                long l2 = readIncompleteLong(addrI + 16, left - 16);
+                long l0 = MEMORY.readLong(base, addrI);
+                int l0a = MEMORY.readInt(base, addrI + TOP_BYTES);
+                long l1 = MEMORY.readLong(base, addrI + 8);
+                int l1a = MEMORY.readInt(base, addrI + 8 + TOP_BYTES);
+                long l2 = readIncompleteLong(base, addrI + 16, left - 16);
                 int l2a = (int) (l2 >> 32);
-                long l3 = readIncompleteLong(addrI + 24, left - 24);
+                long l3 = readIncompleteLong(base, addrI + 24, left - 24);
                 int l3a = (int) (l3 >> 32);
 
                 h0 += (l0 + l1a - l2a) * M0;
@@ -218,32 +220,58 @@ public enum OptimisedBytesStoreHash implements BytesStoreHash<Bytes> {
                 ^ agitate(h2) ^ agitate(h3);
     }
 
+    /*
+     * The underlying byte[] of a heap store, or null for native memory.
+     */
+    @Nullable
+    static Object base(@NotNull Bytes store) {
+        BytesStore bytesStore = store.bytesStore();
+        return bytesStore instanceof HeapBytesStore ? ((HeapBytesStore) bytesStore).realUnderlyingObject() : null;
+    }
+
+    /*
+     * The address of the readPosition, or its offset in the byte[] of a heap store.
+     */
+    static long address(@NotNull Bytes store) {
+        BytesStore bytesStore = store.bytesStore();
+        return bytesStore instanceof HeapBytesStore
+                ? ((HeapBytesStore) bytesStore).dataOffset() + store.readPosition()
+                : bytesStore.address(store.readPosition());
+    }
+
     static long readIncompleteLong(long address, int len) {
+        return readIncompleteLong(null, address, len);
+    }
+
+    /*
+     * Read up to 8 bytes without sign extension, the same as NativeBytesStore.readIncompleteLong
+     */
+    static long readIncompleteLong(@Nullable Object base, long address, int len) {
         switch (len) {
             case 1:
-                return MEMORY.readByte(address);
+                return MEMORY.readByte(base, address) & 0xFFL;
             case 2:
-                return MEMORY.readShort(address);
+                return MEMORY.readShort(base, address) & 0xFFFFL;
             case 3:
                 return IS_LITTLE_ENDIAN
-                        ? (MEMORY.readShort(address) & 0xFFFF) + ((MEMORY.readByte(address + 2) & 0xFF) << 16)
-                        : ((MEMORY.readShort(address) & 0xFFFF) << 8) + (MEMORY.readByte(address + 2) & 0xFF);
+                        ? (MEMORY.readShort(base, address) & 0xFFFF) + ((MEMORY.readByte(base, address + 2) & 0xFF) << 16)
+                        : ((MEMORY.readShort(base, address) & 0xFFFF) << 8) + (MEMORY.readByte(base, address + 2) & 0xFF);
             case 4:
-                return MEMORY.readInt(address);
+                return MEMORY.readInt(base, address) & 0xFFFFFFFFL;
             case 5:
                 return IS_LITTLE_ENDIAN
-                        ? (MEMORY.readInt(address) & 0xFFFFFFFFL) + ((long) (MEMORY.readByte(address + 4) & 0xFF) << 32)
-                        : ((MEMORY.readInt(address) & 0xFFFFFFFFL) << 8) + (MEMORY.readByte(address + 4) & 0xFF);
+                        ? (MEMORY.readInt(base, address) & 0xFFFFFFFFL) + ((long) (MEMORY.readByte(base, address + 4) & 0xFF) << 32)
+                        : ((MEMORY.readInt(base, address) & 0xFFFFFFFFL) << 8) + (MEMORY.readByte(base, address + 4) & 0xFF);
             case 6:
                 return IS_LITTLE_ENDIAN
-                        ? (MEMORY.readInt(address) & 0xFFFFFFFFL) + ((long) (MEMORY.readShort(address + 4) & 0xFFFF) << 32)
-                        : ((MEMORY.readInt(address) & 0xFFFFFFFFL) << 16) + (MEMORY.readShort(address + 4) & 0xFFFF);
+                        ? (MEMORY.readInt(base, address) & 0xFFFFFFFFL) + ((long) (MEMORY.readShort(base, address + 4) & 0xFFFF) << 32)
+                        : ((MEMORY.readInt(base, address) & 0xFFFFFFFFL) << 16) + (MEMORY.readShort(base, address + 4) & 0xFFFF);
             case 7:
                 return IS_LITTLE_ENDIAN
-                        ? (MEMORY.readInt(address) & 0xFFFFFFFFL) + ((long) (MEMORY.readShort(address + 4) & 0xFFFF) << 32) + ((long) (MEMORY.readByte(address + 6) & 0xFF) << 48)
-                        : ((MEMORY.readInt(address) & 0xFFFFFFFFL) << 24) + ((MEMORY.readShort(address + 4) & 0xFFFF) << 8) + (MEMORY.readByte(address + 6) & 0xFF);
+                        ? (MEMORY.readInt(base, address) & 0xFFFFFFFFL) + ((long) (MEMORY.readShort(base, address + 4) & 0xFFFF) << 32) + ((long) (MEMORY.readByte(base, address + 6) & 0xFF) << 48)
+                        : ((MEMORY.readInt(base, address) & 0xFFFFFFFFL) << 24) + ((MEMORY.readShort(base, address + 4) & 0xFFFF) << 8) + (MEMORY.readByte(base, address + 6) & 0xFF);
             default:
-                return len >= 8 ? MEMORY.readLong(address) : 0;
+                return len >= 8 ? MEMORY.readLong(base, address) : 0;
         }
     }
 
@@ -0,0 +1,173 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.HeapBytesStore;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.RandomDataOutput;
+import net.openhft.chronicle.core.Maths;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferOverflowException;
+
+import static net.openhft.chronicle.bytes.algo.OptimisedBytesStoreHash.MEMORY;
+import static net.openhft.chronicle.bytes.algo.VanillaBytesStoreHash.*;
+
+/**
+ * A 128-bit hash of the readable bytes e.g. to identify records by content where a 64-bit hash
+ * would collide too often.  It uses the same four lanes as {@link VanillaBytesStoreHash}, combining
+ * them two ways rather than folding them into one long, so it costs about the same as the 64-bit
+ * hash.  Unlike the 64-bit hash, up to 8 bytes still go through the lanes so the length is always
+ * included.
+ *
+ * <p>The result is written as two longs to an array or a BytesStore so no objects are created.
+ * Native memory, including a mapped chunk which holds all the bytes, and byte[] are read
+ * directly, and other stores via readLong, giving the same result.
+ */
+public enum OptimisedBytesStoreHash128 {
+    INSTANCE;
+
+    /**
+     * Hash the readable bytes into <code>result[0]</code> and <code>result[1]</code>.
+     */
+    public void hash(@NotNull BytesStore store, @NotNull long[] result) {
+        hash(store, Maths.toInt32(store.readRemaining()), result, null, 0);
+    }
+
+    /**
+     * Hash the readable bytes into two longs at <code>offset</code> of <code>out</code>.
+     */
+    public void hash(@NotNull BytesStore store, @NotNull RandomDataOutput out, long offset)
+            throws BufferOverflowException {
+        hash(store, Maths.toInt32(store.readRemaining()), null, out, offset);
+    }
+
+    private static void hash(@NotNull BytesStore store, int remaining,
+                             @Nullable long[] array, @Nullable RandomDataOutput out, long offset) {
+        BytesStore underlying = store.bytesStore();
+        long position = store.readPosition();
+        // a mapped chunk may not hold all the bytes.
+        if (underlying instanceof NativeBytesStore
+                && position >= underlying.start() && position + remaining <= underlying.realCapacity())
+            hashUnsafe(null, underlying.address(position), remaining, array, out, offset);
+        else if (underlying instanceof HeapBytesStore)
+            hashUnsafe(((HeapBytesStore) underlying).realUnderlyingObject(),
+                    ((HeapBytesStore) underlying).dataOffset() + store.readPosition(), remaining, array, out, offset);
+        else
+            hashAny(store, store.readPosition(), remaining, array, out, offset);
+    }
+
+    static void hashUnsafe(@Nullable Object base, long address, int remaining,
+                           @Nullable long[] array, @Nullable RandomDataOutput out, long offset) {
+        long h0 = (long) remaining * K0, h1 = 0, h2 = 0, h3 = 0;
+        int i = 0;
+        do {
+            if (i > 0) {
+                h0 *= K0;
+                h1 *= K1;
+                h2 *= K2;
+                h3 *= K3;
+            }
+            long addrI = address + i;
+            int left = remaining - i;
+            long l0, l1, l2, l3;
+            if (left >= 32) {
+                l0 = MEMORY.readLong(base, addrI);
+                l1 = MEMORY.readLong(base, addrI + 8);
+                l2 = MEMORY.readLong(base, addrI + 16);
+                l3 = MEMORY.readLong(base, addrI + 24);
+            } else {
+                l0 = OptimisedBytesStoreHash.readIncompleteLong(base, addrI, left);
+                l1 = OptimisedBytesStoreHash.readIncompleteLong(base, addrI + 8, left - 8);
+                l2 = OptimisedBytesStoreHash.readIncompleteLong(base, addrI + 16, left - 16);
+                l3 = OptimisedBytesStoreHash.readIncompleteLong(base, addrI + 24, left - 24);
+            }
+            int l0a = (int) (l0 >> 32);
+            int l1a = (int) (l1 >> 32);
+            int l2a = (int) (l2 >> 32);
+            int l3a = (int) (l3 >> 32);
+
+            h0 += (l0 + l1a - l2a) * M0;
+            h1 += (l1 + l2a - l3a) * M1;
+            h2 += (l2 + l3a - l0a) * M2;
+            h3 += (l3 + l0a - l1a) * M3;
+            i += 32;
+        } while (i < remaining);
+
+        write(h0, h1, h2, h3, array, out, offset);
+    }
+
+    static void hashAny(@NotNull RandomDataInput store, long start, int remaining,
+                        @Nullable long[] array, @Nullable RandomDataOutput out, long offset) {
+        long h0 = (long) remaining * K0, h1 = 0, h2 = 0, h3 = 0;
+        int i = 0;
+        do {
+            if (i > 0) {
+                h0 *= K0;
+                h1 *= K1;
+                h2 *= K2;
+                h3 *= K3;
+            }
+            long offsetI = start + i;
+            int left = remaining - i;
+            long l0, l1, l2, l3;
+            if (left >= 32) {
+                l0 = store.readLong(offsetI);
+                l1 = store.readLong(offsetI + 8);
+                l2 = store.readLong(offsetI + 16);
+                l3 = store.readLong(offsetI + 24);
+            } else {
+                l0 = VanillaBytesStoreHash.readIncompleteLong(store, offsetI, left);
+                l1 = VanillaBytesStoreHash.readIncompleteLong(store, offsetI + 8, left - 8);
+                l2 = VanillaBytesStoreHash.readIncompleteLong(store, offsetI + 16, left - 16);
+                l3 = VanillaBytesStoreHash.readIncompleteLong(store, offsetI + 24, left - 24);
+            }
+            int l0a = (int) (l0 >> 32);
+            int l1a = (int) (l1 >> 32);
+            int l2a = (int) (l2 >> 32);
+            int l3a = (int) (l3 >> 32);
+
+            h0 += (l0 + l1a - l2a) * M0;
+            h1 += (l1 + l2a - l3a) * M1;
+            h2 += (l2 + l3a - l0a) * M2;
+            h3 += (l3 + l0a - l1a) * M3;
+            i += 32;
+        } while (i < remaining);
+
+        write(h0, h1, h2, h3, array, out, offset);
+    }
+
+    private static void write(long h0, long h1, long h2, long h3,
+                              @Nullable long[] array, @Nullable RandomDataOutput out, long offset) {
+        long lo = agitate(h0) ^ agitate(h1)
+                ^ agitate(h2) ^ agitate(h3);
+        // pair the lanes differently so the high half isn't derived from the low half.
+        long hi = agitate(h0 * M1 + Long.rotateLeft(h1, 32)) * K2
+                + agitate(h2 * M3 + Long.rotateLeft(h3, 32)) * K3;
+        hi = agitate(hi);
+        if (array != null) {
+            array[0] = lo;
+            array[1] = hi;
+        } else {
+            out.writeLong(offset, lo);
+            out.writeLong(offset + 8, hi);
+        }
+    }
+}
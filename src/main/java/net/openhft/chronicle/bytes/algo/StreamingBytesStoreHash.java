@@ -0,0 +1,187 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+
+import static net.openhft.chronicle.bytes.algo.VanillaBytesStoreHash.*;
+
+/**
+ * Computes the same hash as {@link VanillaBytesStoreHash} for data passed in pieces, e.g. while a
+ * message is being written, or across chunks, without copying it into one BytesStore first.
+ *
+ * <p>Up to 32 bytes of a partial block are held between calls so this doesn't allocate.  The
+ * vanilla hash seeds the first lane with the total length, which is only known at the end, so the
+ * length term is added by finish() instead.  Bytes are combined little endian, as the vanilla hash
+ * does on x86.
+ *
+ * <p>This is not thread safe.
+ */
+public class StreamingBytesStoreHash {
+    private final long[] block = new long[4];
+    private int buffered;
+    private long length;
+    private long blocks;
+    // K0 to the power of the number of blocks after the first.
+    private long k0Power;
+    private long h0, h1, h2, h3;
+
+    public StreamingBytesStoreHash() {
+        reset();
+    }
+
+    /**
+     * Start a new hash.
+     */
+    @NotNull
+    public StreamingBytesStoreHash reset() {
+        block[0] = block[1] = block[2] = block[3] = 0;
+        buffered = 0;
+        length = 0;
+        blocks = 0;
+        k0Power = 1;
+        h0 = h1 = h2 = h3 = 0;
+        return this;
+    }
+
+    /**
+     * Add the readable bytes without consuming them.
+     */
+    @NotNull
+    public StreamingBytesStoreHash update(@NotNull BytesStore store) throws BufferUnderflowException {
+        return update(store, store.readPosition(), store.readRemaining());
+    }
+
+    /**
+     * Add <code>len</code> bytes at <code>offset</code>.
+     */
+    @NotNull
+    public StreamingBytesStoreHash update(@NotNull RandomDataInput in, long offset, long len) throws BufferUnderflowException {
+        if (len < 0)
+            throw new IllegalArgumentException("len: " + len);
+        length += len;
+        long end = offset + len;
+        while (buffered > 0 && offset < end)
+            addByte(in.readByte(offset++));
+        // whole blocks are read directly.
+        for (; offset <= end - 32; offset += 32)
+            process(in.readLong(offset), in.readLong(offset + 8),
+                    in.readLong(offset + 16), in.readLong(offset + 24));
+        for (; offset <= end - 8; offset += 8, buffered += 8)
+            block[buffered >> 3] = in.readLong(offset);
+        while (offset < end)
+            addByte(in.readByte(offset++));
+        return this;
+    }
+
+    /**
+     * Add the 8 bytes of a long, as if written little endian.
+     */
+    @NotNull
+    public StreamingBytesStoreHash update(long l) {
+        length += 8;
+        if ((buffered & 7) == 0) {
+            block[buffered >> 3] = l;
+            buffered += 8;
+            if (buffered == 32)
+                processBlock();
+        } else {
+            for (int i = 0; i < 64; i += 8)
+                addByte((byte) (l >>> i));
+        }
+        return this;
+    }
+
+    private void addByte(byte b) {
+        block[buffered >> 3] |= (b & 0xFFL) << ((buffered & 7) * 8);
+        if (++buffered == 32)
+            processBlock();
+    }
+
+    private void processBlock() {
+        process(block[0], block[1], block[2], block[3]);
+        block[0] = block[1] = block[2] = block[3] = 0;
+        buffered = 0;
+    }
+
+    private void process(long l0, long l1, long l2, long l3) {
+        if (blocks++ > 0) {
+            h0 *= K0;
+            h1 *= K1;
+            h2 *= K2;
+            h3 *= K3;
+            k0Power *= K0;
+        }
+        int l0a = (int) (l0 >> 32);
+        int l1a = (int) (l1 >> 32);
+        int l2a = (int) (l2 >> 32);
+        int l3a = (int) (l3 >> 32);
+
+        h0 += (l0 + l1a - l2a) * M0;
+        h1 += (l1 + l2a - l3a) * M1;
+        h2 += (l2 + l3a - l0a) * M2;
+        h3 += (l3 + l0a - l1a) * M3;
+    }
+
+    /**
+     * @return the number of bytes added since the last reset.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * The hash of the bytes added so far.  This doesn't change the state so more can be added.
+     *
+     * @return the same as VanillaBytesStoreHash for all the bytes added.
+     */
+    public long finish() {
+        if (length <= 8) {
+            long l = block[0];
+            return agitate(l * K0 + (l >> 32) * K1);
+        }
+        long h0 = this.h0, h1 = this.h1, h2 = this.h2, h3 = this.h3;
+        long k0Power = this.k0Power;
+        if (buffered > 0) {
+            if (blocks > 0) {
+                h0 *= K0;
+                h1 *= K1;
+                h2 *= K2;
+                h3 *= K3;
+                k0Power *= K0;
+            }
+            long l0 = block[0], l1 = block[1], l2 = block[2], l3 = block[3];
+            int l0a = (int) (l0 >> 32);
+            int l1a = (int) (l1 >> 32);
+            int l2a = (int) (l2 >> 32);
+            int l3a = (int) (l3 >> 32);
+
+            h0 += (l0 + l1a - l2a) * M0;
+            h1 += (l1 + l2a - l3a) * M1;
+            h2 += (l2 + l3a - l0a) * M2;
+            h3 += (l3 + l0a - l1a) * M3;
+        }
+        // the vanilla hash starts with length * K0 and multiplies by K0 for each later block.
+        h0 += (int) length * (long) K0 * k0Power;
+        return agitate(h0) ^ agitate(h1)
+                ^ agitate(h2) ^ agitate(h3);
+    }
+}
@@ -17,6 +17,7 @@
 package net.openhft.chronicle.bytes.algo;
 
 import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
 import net.openhft.chronicle.core.Maths;
 import org.jetbrains.annotations.NotNull;
 
@@ -53,7 +54,7 @@ public enum VanillaBytesStoreHash implements BytesStoreHash<BytesStore> {
     public long applyAsLong(@NotNull BytesStore store, int remaining) {
         long start = store.readPosition();
         if (remaining <= 8) {
-            long l = store.readIncompleteLong(start);
+            long l = readIncompleteLong(store, start, remaining);
             return agitate(l * K0 + (l >> 32) * K1);
         }
         // use two hashes so that when they are combined the 64-bit hash is more random.
@@ -95,13 +96,13 @@ public enum VanillaBytesStoreHash implements BytesStoreHash<BytesStore> {
             }
 
             long addrI = start + i;
-            long l0 = store.readIncompleteLong(addrI);
+            long l0 = readIncompleteLong(store, addrI, left);
             int l0a = (int) (l0 >> 32);
-            long l1 = store.readIncompleteLong(addrI + 8);
+            long l1 = readIncompleteLong(store, addrI + 8, left - 8);
             int l1a = (int) (l1 >> 32);
-            long l2 = store.readIncompleteLong(addrI + 16);
+            long l2 = readIncompleteLong(store, addrI + 16, left - 16);
             int l2a = (int) (l2 >> 32);
-            long l3 = store.readIncompleteLong(addrI + 24);
+            long l3 = readIncompleteLong(store, addrI + 24, left - 24);
             int l3a = (int) (l3 >> 32);
 
             h0 += (l0 + l1a - l2a) * M0;
@@ -112,4 +113,24 @@ public enum VanillaBytesStoreHash implements BytesStoreHash<BytesStore> {
         return agitate(h0) ^ agitate(h1)
                 ^ agitate(h2) ^ agitate(h3);
     }
+
+    /*
+     * Read up to 8 bytes little endian without sign extension, ignoring anything past len so
+     * every kind of store gives the same result as OptimisedBytesStoreHash.
+     */
+    static long readIncompleteLong(@NotNull RandomDataInput store, long offset, int len) {
+        if (len >= 8)
+            return store.readLong(offset);
+        if (len <= 0)
+            return 0;
+        long l = 0;
+        int i = 0;
+        if (len >= 4) {
+            l = store.readInt(offset) & 0xFFFFFFFFL;
+            i = 4;
+        }
+        for (; i < len; i++)
+            l |= (long) store.readUnsignedByte(offset + i) << (i * 8);
+        return l;
+    }
 }
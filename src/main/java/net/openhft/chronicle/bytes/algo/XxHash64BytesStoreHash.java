@@ -0,0 +1,142 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+
+import static net.openhft.chronicle.bytes.algo.OptimisedBytesStoreHash.MEMORY;
+
+/**
+ * The XXH64 hash of the readable bytes, compatible with the reference implementation so hashes
+ * can be checked by other tools.  Native stores, and mapped stores when the current chunk holds
+ * all the bytes, are read directly by address.
+ */
+public enum XxHash64BytesStoreHash implements BytesStoreHash<BytesStore> {
+    INSTANCE;
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    @Override
+    public long applyAsLong(@NotNull BytesStore store) {
+        return applyAsLong(store, 0);
+    }
+
+    public long applyAsLong(@NotNull BytesStore store, long seed) {
+        BytesStore underlying = store.bytesStore();
+        long position = store.readPosition(), length = store.readRemaining();
+        // a mapped chunk may not hold all the bytes.
+        return underlying instanceof NativeBytesStore
+                && position >= underlying.start() && position + length <= underlying.realCapacity()
+                ? hashNative(((NativeBytesStore) underlying).address(position), length, seed)
+                : hashAny(store, position, length, seed);
+    }
+
+    static long hashNative(long address, long length, long seed) {
+        long end = address + length;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            for (; address <= end - 32; address += 32) {
+                v1 = round(v1, littleEndian(MEMORY.readLong(address)));
+                v2 = round(v2, littleEndian(MEMORY.readLong(address + 8)));
+                v3 = round(v3, littleEndian(MEMORY.readLong(address + 16)));
+                v4 = round(v4, littleEndian(MEMORY.readLong(address + 24)));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += length;
+        for (; address <= end - 8; address += 8)
+            h = Long.rotateLeft(h ^ round(0, littleEndian(MEMORY.readLong(address))), 27) * P1 + P4;
+        if (address <= end - 4) {
+            h = Long.rotateLeft(h ^ (littleEndian(MEMORY.readInt(address)) & 0xFFFFFFFFL) * P1, 23) * P2 + P3;
+            address += 4;
+        }
+        for (; address < end; address++)
+            h = Long.rotateLeft(h ^ (MEMORY.readByte(address) & 0xFF) * P5, 11) * P1;
+        return avalanche(h);
+    }
+
+    static long hashAny(@NotNull RandomDataInput in, long offset, long length, long seed) {
+        long end = offset + length;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            for (; offset <= end - 32; offset += 32) {
+                v1 = round(v1, littleEndian(in.readLong(offset)));
+                v2 = round(v2, littleEndian(in.readLong(offset + 8)));
+                v3 = round(v3, littleEndian(in.readLong(offset + 16)));
+                v4 = round(v4, littleEndian(in.readLong(offset + 24)));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += length;
+        for (; offset <= end - 8; offset += 8)
+            h = Long.rotateLeft(h ^ round(0, littleEndian(in.readLong(offset))), 27) * P1 + P4;
+        if (offset <= end - 4) {
+            h = Long.rotateLeft(h ^ (littleEndian(in.readInt(offset)) & 0xFFFFFFFFL) * P1, 23) * P2 + P3;
+            offset += 4;
+        }
+        for (; offset < end; offset++)
+            h = Long.rotateLeft(h ^ in.readUnsignedByte(offset) * P5, 11) * P1;
+        return avalanche(h);
+    }
+
+    private static long littleEndian(long word) {
+        return IS_LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    private static int littleEndian(int word) {
+        return IS_LITTLE_ENDIAN ? word : Integer.reverseBytes(word);
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = (h ^ round(0, v1)) * P1 + P4;
+        h = (h ^ round(0, v2)) * P1 + P4;
+        h = (h ^ round(0, v3)) * P1 + P4;
+        h = (h ^ round(0, v4)) * P1 + P4;
+        return h;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+}
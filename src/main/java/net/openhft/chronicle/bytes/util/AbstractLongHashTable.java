@@ -0,0 +1,254 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.algo.OptimisedBytesStoreHash;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+
+/**
+ * An open addressing table of long keys, and optionally values, in a NativeBytesStore with linear
+ * probing.  Writers are synchronized, while readers take no lock.  A new key's value is written
+ * before the key is published with writeOrderedLong.  A removed key is marked rather than moved,
+ * and its slot isn't reused until the table is rehashed, so a reader never sees a key with another
+ * key's value.
+ *
+ * <p>A full table is rehashed into a new store which replaces it with a volatile write.  The old
+ * store is not released as a reader may still be using it.  It is freed by its cleaner once
+ * unreachable.
+ *
+ * <p>The keys 0 and Long.MIN_VALUE mark empty and removed slots, so they are held in fields.
+ */
+abstract class AbstractLongHashTable implements Closeable {
+    static final long EMPTY = 0;
+    static final long REMOVED = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int valueSize;
+    private final long[] specialValues = new long[2];
+    private volatile Table table;
+    // a bit for each special key present.
+    private volatile int specials;
+
+    AbstractLongHashTable(long expectedSize, int valueSize) throws IllegalArgumentException {
+        this.valueSize = valueSize;
+        table = new Table(capacityFor(expectedSize), valueSize);
+    }
+
+    static int capacityFor(long size) throws IllegalArgumentException {
+        // rehashing leaves the table no more than half full.
+        long capacity = Math.max(MIN_CAPACITY, size * 2);
+        if (capacity > 1 << 30)
+            throw new IllegalArgumentException("Too large " + size);
+        return (int) Long.highestOneBit(capacity * 2 - 1);
+    }
+
+    /**
+     * The same hash as VanillaBytesStoreHash gives the 8 bytes of the key.
+     */
+    static int hash(long key) {
+        long h = OptimisedBytesStoreHash.hash(key);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int special(long key) {
+        return key == EMPTY ? 0 : key == REMOVED ? 1 : -1;
+    }
+
+    @NotNull
+    private Table table() throws IllegalStateException {
+        Table t = table;
+        if (t == null)
+            throw new IllegalStateException("Closed");
+        return t;
+    }
+
+    long get0(long key, long missing) throws IllegalStateException {
+        Table t = table();
+        int special = special(key);
+        if (special >= 0)
+            return (specials & (1 << special)) != 0 ? specialValues[special] : missing;
+        int index = t.indexOf(key);
+        return index < 0 ? missing : t.readValue(index);
+    }
+
+    boolean contains0(long key) throws IllegalStateException {
+        Table t = table();
+        int special = special(key);
+        if (special >= 0)
+            return (specials & (1 << special)) != 0;
+        return t.indexOf(key) >= 0;
+    }
+
+    /**
+     * @return true if the key was present.
+     */
+    synchronized boolean put0(long key, long value) throws IllegalStateException {
+        Table t = table();
+        int special = special(key);
+        if (special >= 0) {
+            int bit = 1 << special;
+            boolean present = (specials & bit) != 0;
+            specialValues[special] = value;
+            // a volatile write publishes the value.
+            specials |= bit;
+            return present;
+        }
+        int index = t.indexOf(key);
+        if (index >= 0) {
+            t.writeValue(index, value);
+            return true;
+        }
+        if (t.size + t.removed >= t.capacity - t.capacity / 4) {
+            t = rehash(t, t.size + 1);
+            table = t;
+        }
+        index = t.freeIndex(key);
+        t.writeValue(index, value);
+        t.store.writeOrderedLong(t.keyOffset(index), key);
+        t.size++;
+        return false;
+    }
+
+    /**
+     * @return true if the key was removed.
+     */
+    synchronized boolean remove0(long key) throws IllegalStateException {
+        Table t = table();
+        int special = special(key);
+        if (special >= 0) {
+            int bit = 1 << special;
+            boolean present = (specials & bit) != 0;
+            specials &= ~bit;
+            return present;
+        }
+        int index = t.indexOf(key);
+        if (index < 0)
+            return false;
+        t.store.writeOrderedLong(t.keyOffset(index), REMOVED);
+        t.size--;
+        t.removed++;
+        return true;
+    }
+
+    @NotNull
+    private Table rehash(@NotNull Table t, int size) {
+        Table t2 = new Table(capacityFor(size), valueSize);
+        for (int i = 0; i < t.capacity; i++) {
+            long key = t.store.readLong(t.keyOffset(i));
+            if (key == EMPTY || key == REMOVED)
+                continue;
+            int index = t2.freeIndex(key);
+            t2.store.writeLong(t2.keyOffset(index), key);
+            t2.writeValue(index, t.readValue(i));
+            t2.size++;
+        }
+        return t2;
+    }
+
+    public synchronized long size() throws IllegalStateException {
+        return table().size + Integer.bitCount(specials);
+    }
+
+    /**
+     * @return the number of slots before the table is rehashed.
+     */
+    public synchronized int capacity() throws IllegalStateException {
+        return table().capacity;
+    }
+
+    public synchronized void clear() throws IllegalStateException {
+        Table t = table();
+        specials = 0;
+        // a new table so readers of the old one see a consistent state.
+        table = new Table(t.capacity, valueSize);
+    }
+
+    /**
+     * Free the memory.  There must be no readers.
+     */
+    @Override
+    public synchronized void close() {
+        Table t = table;
+        if (t == null)
+            return;
+        table = null;
+        t.store.release();
+    }
+
+    static final class Table {
+        final NativeBytesStore<Void> store;
+        final int capacity;
+        final int mask;
+        final long values;
+        final int valueSize;
+        int size, removed;
+
+        Table(int capacity, int valueSize) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.valueSize = valueSize;
+            this.values = capacity * 8L;
+            store = NativeBytesStore.nativeStoreWithFixedCapacity(capacity * (8L + valueSize));
+        }
+
+        long keyOffset(int index) {
+            return index * 8L;
+        }
+
+        int indexOf(long key) {
+            for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+                long k = store.readVolatileLong(keyOffset(index));
+                if (k == key)
+                    return index;
+                if (k == EMPTY)
+                    return -1;
+            }
+        }
+
+        int freeIndex(long key) {
+            for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+                if (store.readLong(keyOffset(index)) == EMPTY)
+                    return index;
+            }
+        }
+
+        long readValue(int index) {
+            switch (valueSize) {
+                case 8:
+                    return store.readVolatileLong(values + index * 8L);
+                case 4:
+                    return store.readVolatileInt(values + index * 4L);
+                default:
+                    return 0;
+            }
+        }
+
+        void writeValue(int index, long value) {
+            switch (valueSize) {
+                case 8:
+                    store.writeOrderedLong(values + index * 8L, value);
+                    break;
+                case 4:
+                    store.writeOrderedInt(values + index * 4L, (int) value);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * A fixed size set of bits in a BytesStore, e.g. a NativeBytesStore or a MappedBytesStore so it
+ * can be shared between processes and persisted, unlike a java.util.BitSet.
+ *
+ * <p>The bits are held in little endian longs, bit <code>i</code> being bit <code>i % 64</code>
+ * of long <code>i / 64</code>.  Each bit is set and cleared atomically with compareAndSwapLong,
+ * and the bulk operations update each long atomically, so they can be used while other threads
+ * update the bits, though they don't see all of another bulk operation at once.
+ */
+public class BytesBitSet {
+    private static final int AND = 0, OR = 1, AND_NOT = 2;
+
+    @NotNull
+    private final BytesStore store;
+    private final long offset;
+    private final long size;
+    private final long words;
+
+    /**
+     * @param size the number of bits
+     * @throws BufferOverflowException if the bits don't fit in the store.
+     */
+    public BytesBitSet(@NotNull BytesStore store, long offset, long size)
+            throws IllegalArgumentException, BufferOverflowException {
+        if (size <= 0)
+            throw new IllegalArgumentException("size must be positive, was " + size);
+        if ((offset & 7) != 0)
+            throw new IllegalArgumentException("The offset " + offset + " is not 8 byte aligned");
+        if (offset < store.start() || offset + sizeFor(size) > store.safeLimit())
+            throw new BufferOverflowException();
+        this.store = store;
+        this.offset = offset;
+        this.size = size;
+        this.words = (size + 63) >>> 6;
+    }
+
+    /**
+     * @return the number of bytes needed for this many bits, rounded up to whole longs.
+     */
+    public static long sizeFor(long bits) {
+        return ((bits + 63) >>> 6) << 3;
+    }
+
+    /**
+     * @return the number of bits.
+     */
+    public long size() {
+        return size;
+    }
+
+    private long wordOffset(long bit) throws IndexOutOfBoundsException {
+        if (bit < 0 || bit >= size)
+            throw new IndexOutOfBoundsException("bit " + bit + " not in [0, " + size + ")");
+        return offset + ((bit >>> 6) << 3);
+    }
+
+    public boolean get(long bit) throws IndexOutOfBoundsException {
+        return (store.readVolatileLong(wordOffset(bit)) & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return true if the bit was clear and this set it.
+     */
+    public boolean set(long bit) throws IndexOutOfBoundsException {
+        long wordOffset = wordOffset(bit);
+        long mask = 1L << bit;
+        for (; ; ) {
+            long word = store.readVolatileLong(wordOffset);
+            if ((word & mask) != 0)
+                return false;
+            if (store.compareAndSwapLong(wordOffset, word, word | mask))
+                return true;
+        }
+    }
+
+    /**
+     * @return true if the bit was set and this cleared it.
+     */
+    public boolean clear(long bit) throws IndexOutOfBoundsException {
+        long wordOffset = wordOffset(bit);
+        long mask = 1L << bit;
+        for (; ; ) {
+            long word = store.readVolatileLong(wordOffset);
+            if ((word & mask) == 0)
+                return false;
+            if (store.compareAndSwapLong(wordOffset, word, word & ~mask))
+                return true;
+        }
+    }
+
+    /**
+     * Clear all the bits.
+     */
+    public void clear() {
+        for (long i = 0; i < words; i++)
+            store.writeOrderedLong(offset + (i << 3), 0L);
+    }
+
+    /**
+     * @return the index of the first set bit at or after <code>from</code>, or -1 if there is none.
+     */
+    public long nextSetBit(long from) {
+        if (from < 0)
+            throw new IndexOutOfBoundsException("from " + from + " < 0");
+        if (from >= size)
+            return -1;
+        long i = from >>> 6;
+        long word = store.readVolatileLong(offset + (i << 3)) & (-1L << from);
+        for (; ; ) {
+            if (word != 0) {
+                long bit = (i << 6) + Long.numberOfTrailingZeros(word);
+                return bit < size ? bit : -1;
+            }
+            if (++i >= words)
+                return -1;
+            word = store.readVolatileLong(offset + (i << 3));
+        }
+    }
+
+    /**
+     * @return the index of the first clear bit at or after <code>from</code>, or -1 if there is
+     * none.
+     */
+    public long nextClearBit(long from) {
+        if (from < 0)
+            throw new IndexOutOfBoundsException("from " + from + " < 0");
+        if (from >= size)
+            return -1;
+        long i = from >>> 6;
+        long word = ~store.readVolatileLong(offset + (i << 3)) & (-1L << from);
+        for (; ; ) {
+            if (word != 0) {
+                long bit = (i << 6) + Long.numberOfTrailingZeros(word);
+                return bit < size ? bit : -1;
+            }
+            if (++i >= words)
+                return -1;
+            word = ~store.readVolatileLong(offset + (i << 3));
+        }
+    }
+
+    /**
+     * @return the number of bits set.
+     */
+    public long cardinality() {
+        long count = 0;
+        for (long i = 0; i < words; i++)
+            count += Long.bitCount(store.readVolatileLong(offset + (i << 3)));
+        return count;
+    }
+
+    /**
+     * Keep only the bits also set in <code>other</code>.  Bits beyond the other's size are cleared.
+     */
+    public void and(@NotNull BytesBitSet other) {
+        for (long i = 0; i < words; i++)
+            update(i, i < other.words ? other.word(i) : 0L, AND);
+    }
+
+    /**
+     * Set the bits set in <code>other</code>, up to the size of this.
+     */
+    public void or(@NotNull BytesBitSet other) {
+        for (long i = 0, n = Math.min(words, other.words); i < n; i++)
+            update(i, other.word(i), OR);
+    }
+
+    /**
+     * Clear the bits set in <code>other</code>.
+     */
+    public void andNot(@NotNull BytesBitSet other) {
+        for (long i = 0, n = Math.min(words, other.words); i < n; i++)
+            update(i, other.word(i), AND_NOT);
+    }
+
+    private long word(long i) {
+        return store.readVolatileLong(offset + (i << 3));
+    }
+
+    private void update(long i, long operand, int op) {
+        long wordOffset = offset + (i << 3);
+        if (i == words - 1 && (size & 63) != 0)
+            // don't set the bits past the end.
+            operand &= (1L << size) - 1;
+        for (; ; ) {
+            long word = store.readVolatileLong(wordOffset);
+            long word2 = op == AND ? word & operand : op == OR ? word | operand : word & ~operand;
+            if (word2 == word || store.compareAndSwapLong(wordOffset, word, word2))
+                return;
+        }
+    }
+}
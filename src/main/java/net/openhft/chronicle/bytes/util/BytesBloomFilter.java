@@ -0,0 +1,164 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.algo.BytesStoreHash;
+import net.openhft.chronicle.bytes.algo.OptimisedBytesStoreHash;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A Bloom filter in a BytesStore, to check cheaply that a key is not in e.g. a mapped journal
+ * before looking for it.  In a MappedBytesStore it persists across restarts and can be shared
+ * between processes, and keys can be added concurrently as the bits are set with
+ * compareAndSwapLong.
+ *
+ * <p>Keys are hashed with BytesStoreHash, and the bits for a key are found by double hashing,
+ * <code>h1 + i * h2</code>.  A blocked filter puts all the bits for a key in one 64 byte cache
+ * line, so a lookup costs one cache miss rather than one per hash, for a slightly higher false
+ * positive rate.
+ *
+ * <p>The number of bits is a power of 2, and the layout is recorded in the header so a filter is
+ * only reopened with the same settings.
+ */
+public class BytesBloomFilter {
+    static final int LAYOUT = 0, HEADER = 64;
+    static final int BLOCK_BITS = 512;
+
+    @NotNull
+    private final BytesBitSet bits;
+    private final long mask;
+    private final long blockMask;
+    private final int hashes;
+    private final boolean blocked;
+
+    /**
+     * Use all the store, or as much as is a power of 2 bits after the header.
+     *
+     * @param hashes  the number of bits per key, see {@link #optimalHashes(long, long)}
+     * @param blocked whether to put the bits for each key in one cache line.
+     * @throws IllegalArgumentException if the store is too small or was used for a filter with
+     *                                  different settings.
+     */
+    public BytesBloomFilter(@NotNull BytesStore store, int hashes, boolean blocked) throws IllegalArgumentException {
+        if (hashes < 1 || hashes > 64)
+            throw new IllegalArgumentException("hashes must be 1 to 64, was " + hashes);
+        long base = store.start();
+        long space = (store.safeLimit() - base - HEADER) * 8;
+        if (space < BLOCK_BITS)
+            throw new IllegalArgumentException("Store is too small");
+        long size = Long.highestOneBit(space);
+        long layout = Long.numberOfTrailingZeros(size) | (hashes << 8) | (blocked ? 1 << 16 : 0);
+        if (!store.compareAndSwapLong(base + LAYOUT, 0, layout) && store.readVolatileLong(base + LAYOUT) != layout)
+            throw new IllegalArgumentException("Layout was " + Long.toHexString(store.readVolatileLong(base + LAYOUT))
+                    + " not " + Long.toHexString(layout));
+        this.bits = new BytesBitSet(store, base + HEADER, size);
+        this.mask = size - 1;
+        this.blockMask = size / BLOCK_BITS - 1;
+        this.hashes = hashes;
+        this.blocked = blocked;
+    }
+
+    /**
+     * @return the number of bytes needed for a filter of <code>bits</code> bits.
+     */
+    public static long sizeFor(long bits) throws IllegalArgumentException {
+        if (bits < BLOCK_BITS || Long.bitCount(bits) != 1)
+            throw new IllegalArgumentException("bits must be a power of 2 of at least " + BLOCK_BITS);
+        return HEADER + bits / 8;
+    }
+
+    /**
+     * @return the power of 2 bits to hold <code>entries</code> with about this false positive rate.
+     */
+    public static long optimalBits(long entries, double falsePositiveRate) {
+        double bits = -entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        return Math.max(BLOCK_BITS, Long.highestOneBit((long) Math.ceil(bits) * 2 - 1));
+    }
+
+    /**
+     * @return the number of hashes with the lowest false positive rate for this many entries.
+     */
+    public static int optimalHashes(long entries, long bits) {
+        return (int) Math.max(1, Math.min(64, Math.round((double) bits / entries * Math.log(2))));
+    }
+
+    /**
+     * Add the readable bytes of a key.
+     *
+     * @return true if the key wasn't in the filter before.
+     */
+    public boolean add(@NotNull BytesStore key) {
+        return addHash(BytesStoreHash.hash(key));
+    }
+
+    /**
+     * @return false if the readable bytes of the key were never added, true if they may have been.
+     */
+    public boolean mightContain(@NotNull BytesStore key) {
+        return mightContainHash(BytesStoreHash.hash(key));
+    }
+
+    /**
+     * Add a key by its BytesStoreHash, e.g. when it is already known.
+     *
+     * @return true if the key wasn't in the filter before.
+     */
+    public boolean addHash(long hash) {
+        long h2 = OptimisedBytesStoreHash.hash(hash) | 1;
+        long offset = blocked ? ((h2 >>> 32) & blockMask) * BLOCK_BITS : 0;
+        long bitMask = blocked ? BLOCK_BITS - 1 : mask;
+        boolean added = false;
+        long h = hash;
+        for (int i = 0; i < hashes; i++, h += h2)
+            added |= bits.set(offset + (h & bitMask));
+        return added;
+    }
+
+    public boolean mightContainHash(long hash) {
+        long h2 = OptimisedBytesStoreHash.hash(hash) | 1;
+        long offset = blocked ? ((h2 >>> 32) & blockMask) * BLOCK_BITS : 0;
+        long bitMask = blocked ? BLOCK_BITS - 1 : mask;
+        long h = hash;
+        for (int i = 0; i < hashes; i++, h += h2)
+            if (!bits.get(offset + (h & bitMask)))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the number of bits.
+     */
+    public long size() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the fraction of the bits set, from which the false positive rate is about this to
+     * the power of the number of hashes.
+     */
+    public double fill() {
+        return (double) bits.cardinality() / size();
+    }
+
+    /**
+     * Remove all the keys.
+     */
+    public void clear() {
+        bits.clear();
+    }
+}
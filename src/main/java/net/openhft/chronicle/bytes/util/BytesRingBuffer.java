@@ -0,0 +1,208 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.ReadBytesMarshallable;
+import net.openhft.chronicle.core.Maths;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+
+/**
+ * A single producer, single consumer queue of variable length messages in a BytesStore.  In a
+ * MappedBytesStore the producer and consumer can be in different processes, each with its own
+ * BytesRingBuffer over the same memory.
+ *
+ * <p>The write and read positions are on their own cache lines, followed by the data.  Each message
+ * is a 4 byte length and the bytes, padded to 8 bytes.  A message which doesn't fit before the end
+ * is written at the start after a padding marker.  The producer can write several messages and
+ * make them visible together with one writeOrderedLong, and the consumer frees them in batches
+ * the same way.  Each side caches the other's position so it only reads it when it appears to be
+ * full or empty.
+ *
+ * <p>Messages are read in place through a Bytes view passed to a ReadBytesMarshallable, which
+ * must not keep it.
+ */
+public class BytesRingBuffer implements Closeable {
+    static final int CAPACITY = 0, WRITE_POSITION = 64, READ_POSITION = 128, HEADER = 192;
+    private static final int PADDING = -1;
+
+    @NotNull
+    private final BytesStore store;
+    private final long base;
+    private final long data;
+    private final long capacity;
+    private final long mask;
+    @NotNull
+    private final Bytes view;
+
+    // producer state
+    private long writePosition;
+    private long cachedReadPosition;
+
+    // consumer state
+    private long readPosition;
+    private long cachedWritePosition;
+
+    /**
+     * Use all the store, or as much as is a power of 2 after the header.
+     *
+     * @throws IllegalArgumentException if the store has been used for a ring buffer of another size
+     */
+    public BytesRingBuffer(@NotNull BytesStore store) throws IllegalArgumentException {
+        this.store = store;
+        this.base = store.start();
+        long space = store.safeLimit() - base - HEADER;
+        if (space < 64)
+            throw new IllegalArgumentException("Store is too small");
+        this.capacity = Long.highestOneBit(space);
+        this.mask = capacity - 1;
+        this.data = base + HEADER;
+        if (!store.compareAndSwapLong(base + CAPACITY, 0, capacity) && store.readVolatileLong(base + CAPACITY) != capacity)
+            throw new IllegalArgumentException("Capacity was " + store.readVolatileLong(base + CAPACITY) + " not " + capacity);
+        writePosition = store.readVolatileLong(base + WRITE_POSITION);
+        cachedWritePosition = writePosition;
+        readPosition = store.readVolatileLong(base + READ_POSITION);
+        cachedReadPosition = readPosition;
+        view = store.bytesForRead();
+    }
+
+    /**
+     * @return the number of bytes needed for a ring buffer with <code>capacity</code> bytes of data
+     */
+    public static long sizeFor(long capacity) throws IllegalArgumentException {
+        if (capacity < 64 || Long.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of 2 of at least 64");
+        return HEADER + capacity;
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Write a message and publish it.  The readable bytes are not consumed.
+     *
+     * @return false if there is not enough space.
+     */
+    public boolean offer(@NotNull BytesStore message) throws IllegalArgumentException {
+        if (!write(message))
+            return false;
+        publish();
+        return true;
+    }
+
+    /**
+     * Write a message without publishing it.  The readable bytes are not consumed.
+     *
+     * @return false if there is not enough space, after publishing what has been written.
+     * @throws IllegalArgumentException if the message could never fit.
+     */
+    public boolean write(@NotNull BytesStore message) throws IllegalArgumentException {
+        int length = Maths.toInt32(message.readRemaining());
+        long size = align(4 + length);
+        if (size > capacity)
+            throw new IllegalArgumentException("Message of " + length + " bytes is larger than the capacity " + capacity);
+        long offset = writePosition & mask;
+        long toEnd = capacity - offset;
+        long needed = size <= toEnd ? size : toEnd + size;
+        if (needed > capacity - (writePosition - cachedReadPosition)) {
+            cachedReadPosition = store.readVolatileLong(base + READ_POSITION);
+            if (needed > capacity - (writePosition - cachedReadPosition)) {
+                publish();
+                return false;
+            }
+        }
+        if (size > toEnd) {
+            store.writeInt(data + offset, PADDING);
+            writePosition += toEnd;
+            offset = 0;
+        }
+        store.write(data + offset + 4, message, message.readPosition(), length);
+        store.writeInt(data + offset, length);
+        writePosition += size;
+        return true;
+    }
+
+    /**
+     * Make the messages written visible to the consumer.
+     */
+    public void publish() {
+        store.writeOrderedLong(base + WRITE_POSITION, writePosition);
+    }
+
+    /**
+     * Pass up to <code>maxMessages</code> messages to the handler, then free them.
+     *
+     * @return the number of messages read.
+     */
+    public int read(@NotNull ReadBytesMarshallable handler, int maxMessages) {
+        long position = readPosition;
+        int count = 0;
+        try {
+            while (count < maxMessages) {
+                if (position == cachedWritePosition) {
+                    cachedWritePosition = store.readVolatileLong(base + WRITE_POSITION);
+                    if (position == cachedWritePosition)
+                        break;
+                }
+                long offset = position & mask;
+                int length = store.readInt(data + offset);
+                if (length == PADDING) {
+                    position += capacity - offset;
+                    continue;
+                }
+                view.readLimit(data + offset + 4 + length);
+                view.readPosition(data + offset + 4);
+                // count it first so it is freed even if the handler throws.
+                position += align(4 + length);
+                count++;
+                handler.readMarshallable(view);
+            }
+        } finally {
+            if (position != readPosition) {
+                readPosition = position;
+                store.writeOrderedLong(base + READ_POSITION, position);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the bytes of data, excluding the header
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes published and not yet read, including headers and padding
+     */
+    public long used() {
+        return store.readVolatileLong(base + WRITE_POSITION) - store.readVolatileLong(base + READ_POSITION);
+    }
+
+    /**
+     * Release the view of the store.  The store itself belongs to the caller.
+     */
+    @Override
+    public void close() {
+        view.release();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.BytesUtil;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.algo.BytesStoreHash;
+import net.openhft.chronicle.core.Maths;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns bytes, e.g. symbols, as {@link InternedBytesStore}s copied off heap so they can be
+ * compared by identity and hashed without reading them again.  No Strings are created, and only
+ * the handle is created on heap the first time some bytes are seen.
+ *
+ * <p>Interned bytes are never evicted, so they remain valid until the interner is closed.  The
+ * text is copied into chunks of native memory rather than one allocation each.  This is thread
+ * safe.
+ */
+public class BytesStoreInterner implements Closeable {
+    private static final int CHUNK_SIZE = 64 << 10;
+
+    private final List<NativeBytesStore<Void>> chunks = new ArrayList<>();
+    @NotNull
+    private InternedBytesStore[] table;
+    private int size;
+    private NativeBytesStore<Void> chunk;
+    private long chunkUsed;
+    private boolean closed;
+
+    public BytesStoreInterner(int capacity) throws IllegalArgumentException {
+        table = new InternedBytesStore[Maths.nextPower2(capacity * 2, 16)];
+    }
+
+    /**
+     * Intern the readable bytes without consuming them.
+     *
+     * @param bytes to look up or copy
+     * @return the only handle for these contents.
+     * @throws IllegalStateException if the interner has been closed.
+     */
+    @NotNull
+    public synchronized InternedBytesStore intern(@NotNull BytesStore bytes) throws IllegalStateException {
+        if (closed)
+            throw new IllegalStateException("Closed");
+        if (bytes instanceof InternedBytesStore && contains((InternedBytesStore) bytes))
+            return (InternedBytesStore) bytes;
+
+        long hash = BytesStoreHash.hash(bytes);
+        long position = bytes.readPosition();
+        long length = bytes.readRemaining();
+        int mask = table.length - 1;
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        for (InternedBytesStore ibs; (ibs = table[index]) != null; index = (index + 1) & mask) {
+            if (ibs.hash() == hash && ibs.readRemaining() == length
+                    && BytesUtil.bytesEqual(ibs, ibs.readPosition(), bytes, position, length))
+                return ibs;
+        }
+
+        InternedBytesStore ibs = copy(bytes, position, length, hash);
+        table[index] = ibs;
+        if (++size > table.length / 2)
+            resize();
+        return ibs;
+    }
+
+    private boolean contains(@NotNull InternedBytesStore ibs) {
+        int mask = table.length - 1;
+        for (int index = ibs.hashCode() & mask; table[index] != null; index = (index + 1) & mask)
+            if (table[index] == ibs)
+                return true;
+        return false;
+    }
+
+    @NotNull
+    private InternedBytesStore copy(@NotNull BytesStore bytes, long position, long length, long hash) {
+        // allocate at least one byte so even an empty handle has an address in a chunk.
+        long needed = Math.max(length, 1);
+        if (chunk == null || chunkUsed + needed > chunk.capacity()) {
+            chunk = NativeBytesStore.nativeStoreWithFixedCapacity(Math.max(CHUNK_SIZE, needed));
+            chunks.add(chunk);
+            chunkUsed = 0;
+        }
+        chunk.write(chunkUsed, bytes, position, length);
+        InternedBytesStore ibs = new InternedBytesStore(chunk.address(chunkUsed), length, hash);
+        chunkUsed += needed;
+        return ibs;
+    }
+
+    private void resize() {
+        InternedBytesStore[] old = table;
+        table = new InternedBytesStore[old.length * 2];
+        int mask = table.length - 1;
+        for (InternedBytesStore ibs : old) {
+            if (ibs == null)
+                continue;
+            int index = ibs.hashCode() & mask;
+            while (table[index] != null)
+                index = (index + 1) & mask;
+            table[index] = ibs;
+        }
+    }
+
+    /**
+     * @return the number of distinct bytes interned.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Free the memory of all the interned bytes.  They must not be used after this.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (NativeBytesStore<Void> nbs : chunks)
+            nbs.release();
+        chunks.clear();
+        chunk = null;
+        table = new InternedBytesStore[0];
+        size = 0;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.IORuntimeException;
+import net.openhft.chronicle.bytes.StopCharTester;
+import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.annotation.ForceInline;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+
+/**
+ * A StopCharTester compiled into a 256-bit lookup table for the bytes 0 to 255. Characters outside
+ * this range, and any byte the original tester threw an exception for, are passed to the original
+ * tester.
+ *
+ * <p>This also supports scanning native memory for the next stop byte a word at a time. Any byte
+ * at or above <code>lowLimit</code> which is not one of up to three explicit stop values can be
+ * skipped without a lookup, which covers the usual control, space, comma and quote terminators.
+ *
+ * <p>Note: the tester compiled must be stateless, see {@link StopCharTester#compiled()}
+ */
+public final class CompiledStopCharTester implements StopCharTester {
+    private static final Memory MEMORY = OS.memory();
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final int MAX_EXPLICIT = 3;
+
+    private final StopCharTester tester;
+    private final long[] table = new long[4];
+    private final long[] delegate = new long[4];
+    private final long lessThan;
+    private final long[] explicit;
+
+    private CompiledStopCharTester(@NotNull StopCharTester tester) {
+        this.tester = tester;
+        for (int ch = 0; ch < 256; ch++) {
+            boolean stop;
+            try {
+                stop = tester.isStopChar(ch);
+            } catch (RuntimeException e) {
+                // let the original tester throw when this byte is actually seen.
+                delegate[ch >>> 6] |= 1L << ch;
+                stop = true;
+            }
+            if (stop)
+                table[ch >>> 6] |= 1L << ch;
+        }
+
+        // find the lowest limit which leaves at most MAX_EXPLICIT stop bytes below 128 to check.
+        int lowLimit = 128, count = 0;
+        while (lowLimit > 0 && count + (isSet(table, lowLimit - 1) ? 1 : 0) <= MAX_EXPLICIT) {
+            lowLimit--;
+            if (isSet(table, lowLimit))
+                count++;
+        }
+        // stop bytes just above the limit are cheaper to include in the limit.
+        while (lowLimit < 128 && isSet(table, lowLimit)) {
+            lowLimit++;
+            count--;
+        }
+        lessThan = ONES * lowLimit;
+        explicit = new long[count];
+        for (int ch = lowLimit, i = 0; ch < 128; ch++)
+            if (isSet(table, ch))
+                explicit[i++] = ONES * ch;
+    }
+
+    /**
+     * Compile a stateless tester into a lookup table.
+     *
+     * @param tester to compile
+     * @return the compiled form.
+     */
+    @NotNull
+    public static CompiledStopCharTester compile(@NotNull StopCharTester tester) {
+        return tester instanceof CompiledStopCharTester
+                ? (CompiledStopCharTester) tester
+                : new CompiledStopCharTester(tester);
+    }
+
+    private static boolean isSet(long[] bits, int ch) {
+        return (bits[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    @Override
+    @ForceInline
+    public boolean isStopChar(int ch) throws IORuntimeException {
+        if ((ch & ~0xFF) != 0 || isSet(delegate, ch))
+            return tester.isStopChar(ch);
+        return isSet(table, ch);
+    }
+
+    @NotNull
+    @Override
+    public StopCharTester compiled() {
+        return this;
+    }
+
+    /**
+     * Scan native memory for the first stop byte.
+     *
+     * @param address        of the first byte
+     * @param length         to scan
+     * @param stopOnNonAscii also stop on any byte with the top bit set, e.g. to decode UTF-8
+     * @return the index of the first byte to stop on, or <code>length</code> if there isn't one.
+     */
+    public int scan(long address, int length, boolean stopOnNonAscii) throws IORuntimeException {
+        int i = 0;
+        for (; i < length - 7; i += 8) {
+            long word = MEMORY.readLong(address + i);
+            long mask = candidates(word);
+            if (mask != 0) {
+                // bytes below the lowest candidate are exact, only little endian preserves that order.
+                int j = IS_LITTLE_ENDIAN ? Long.numberOfTrailingZeros(mask) >>> 3 : 0;
+                for (; j < 8; j++)
+                    if (isStop(MEMORY.readByte(address + i + j), stopOnNonAscii))
+                        return i + j;
+            }
+        }
+        for (; i < length; i++)
+            if (isStop(MEMORY.readByte(address + i), stopOnNonAscii))
+                return i;
+        return length;
+    }
+
+    @ForceInline
+    private boolean isStop(int b, boolean stopOnNonAscii) throws IORuntimeException {
+        return (b < 0 && stopOnNonAscii) || isStopChar(b & 0xFF);
+    }
+
+    /**
+     * Flag every byte which is below the low limit, has its top bit set, or matches an explicit
+     * stop value.  There can be false positives above the lowest true one due to borrows.
+     */
+    private long candidates(long word) {
+        long mask = word | ((word - lessThan) & ~word);
+        for (long value : explicit) {
+            long x = word ^ value;
+            mask |= (x - ONES) & ~x;
+        }
+        return mask & HIGH_BITS;
+    }
+}
@@ -19,6 +19,7 @@ package net.openhft.chronicle.bytes.util;
 import net.openhft.chronicle.bytes.IORuntimeException;
 import net.openhft.chronicle.bytes.StopCharTester;
 import net.openhft.chronicle.core.annotation.ForceInline;
+import org.jetbrains.annotations.NotNull;
 
 public class EscapingStopCharTester implements StopCharTester {
     private final StopCharTester sct;
@@ -41,4 +42,11 @@ public class EscapingStopCharTester implements StopCharTester {
         }
         return sct.isStopChar(ch);
     }
+
+    @NotNull
+    @Override
+    public StopCharTester compiled() {
+        // this is stateful so only the tester it wraps can be compiled.
+        return new EscapingStopCharTester(sct.compiled());
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.VanillaBytes;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read only view of bytes held off heap by a {@link BytesStoreInterner}.  There is only one
+ * instance for each distinct content, so two can be compared with <code>==</code>, and the hash
+ * is computed once when interned.
+ *
+ * <p>The memory belongs to the interner, so reserve() and release() have no effect, and it is
+ * freed when the interner is closed.  Every write, including bytesForWrite(), throws an
+ * UnsupportedOperationException.
+ */
+public final class InternedBytesStore extends NativeBytesStore<Void> {
+    private final long hash;
+
+    InternedBytesStore(long address, long length, long hash) {
+        super(address, length);
+        this.hash = hash;
+    }
+
+    /**
+     * @return the hash of the contents as computed by BytesStoreHash
+     */
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || super.equals(obj);
+    }
+
+    @Override
+    public void reserve() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public long refCount() {
+        return 1;
+    }
+
+    @Override
+    public VanillaBytes<Void> bytesForWrite() {
+        throw readOnly();
+    }
+
+    /**
+     * @return a Bytes to read the contents, which starts full so it can't be appended to.
+     */
+    @NotNull
+    @Override
+    public Bytes<Void> bytesForRead() {
+        return new VanillaBytes<Void>(this).readLimit(writeLimit());
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> zeroOut(long start, long end) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean compareAndSwapInt(long offset, int expected, int value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean compareAndSwapLong(long offset, long expected, long value) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeByte(long offset, byte i8) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeShort(long offset, short i16) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeInt(long offset, int i32) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeOrderedInt(long offset, int i) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeLong(long offset, long i64) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeOrderedLong(long offset, long i) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeFloat(long offset, float f) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeDouble(long offset, double d) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeVolatileByte(long offset, byte i8) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeVolatileShort(long offset, short i16) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeVolatileInt(long offset, int i32) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> writeVolatileLong(long offset, long i64) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> write(long offsetInRDO, byte[] bytes, int offset, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void write(long offsetInRDO, @NotNull ByteBuffer bytes, int offset, int length) {
+        throw readOnly();
+    }
+
+    @NotNull
+    @Override
+    public NativeBytesStore<Void> write(long offsetInRDO, @NotNull RandomDataInput bytes, long offset, long length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void nativeWrite(long address, long position, long size) {
+        throw readOnly();
+    }
+
+    @Override
+    protected void write8bit(long position, char[] chars, int offset, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public long appendUtf8(long pos, char[] chars, int offset, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public int appendAscii(long pos, char[] chars, int offset, int length) {
+        throw readOnly();
+    }
+
+    @NotNull
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Interned bytes are read only");
+    }
+}
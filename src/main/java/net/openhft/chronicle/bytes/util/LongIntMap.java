@@ -0,0 +1,52 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+/**
+ * A map of long to int held off heap, e.g. from an id to an index in a table.  Reads take no
+ * lock and don't allocate.  Writes are synchronized.
+ */
+public class LongIntMap extends AbstractLongHashTable {
+    public LongIntMap(long expectedSize) throws IllegalArgumentException {
+        super(expectedSize, 4);
+    }
+
+    /**
+     * @return the value, or <code>missing</code> if the key is not present.
+     */
+    public int get(long key, int missing) throws IllegalStateException {
+        return (int) get0(key, missing);
+    }
+
+    public boolean containsKey(long key) throws IllegalStateException {
+        return contains0(key);
+    }
+
+    /**
+     * @return true if a value was replaced.
+     */
+    public boolean put(long key, int value) throws IllegalStateException {
+        return put0(key, value);
+    }
+
+    /**
+     * @return true if the key was removed.
+     */
+    public boolean remove(long key) throws IllegalStateException {
+        return remove0(key);
+    }
+}
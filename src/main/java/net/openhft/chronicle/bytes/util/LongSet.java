@@ -0,0 +1,44 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+/**
+ * A set of longs held off heap.  Reads take no lock and don't allocate.  Writes are synchronized.
+ */
+public class LongSet extends AbstractLongHashTable {
+    public LongSet(long expectedSize) throws IllegalArgumentException {
+        super(expectedSize, 0);
+    }
+
+    public boolean contains(long key) throws IllegalStateException {
+        return contains0(key);
+    }
+
+    /**
+     * @return true if the key was added, false if it was already present.
+     */
+    public boolean add(long key) throws IllegalStateException {
+        return !put0(key, 0);
+    }
+
+    /**
+     * @return true if the key was removed.
+     */
+    public boolean remove(long key) throws IllegalStateException {
+        return remove0(key);
+    }
+}
@@ -0,0 +1,715 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.IORuntimeException;
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A B+tree of byte keys and long values in fixed size pages of a MappedFile, for range queries
+ * over more data than fits in memory, e.g. an index of times to journal positions.  Keys are
+ * compared as unsigned bytes, so e.g. big endian timestamps are in time order, and are never
+ * copied onto the heap.
+ *
+ * <p>Page 0 is a header, and each other page is a node of a count, a link and the entries, each a
+ * long value or child page, the key length and the key padded to the maximum key size.  In an
+ * internal node the link is the leftmost child, and in a leaf it is the next leaf, so a
+ * {@link Cursor} can scan a range without going back up the tree.  Pages are never split over
+ * chunks, so the page size must divide the chunk size.
+ *
+ * <p>Sorted data can be loaded much faster than putting each key with a {@link BulkLoader}
+ * which fills the pages from left to right.  Entries are not removed.  There is one writer, and
+ * a Cursor must not be used while the tree is being written.
+ */
+public class MappedBPlusTree implements Closeable {
+    static final long MAGIC = 0x3130_4545_5254_5042L;
+    static final int HEADER_MAGIC = 0, HEADER_PAGE_SIZE = 8, HEADER_KEY_SIZE = 12, HEADER_ROOT = 16,
+            HEADER_HEIGHT = 24, HEADER_PAGES = 32, HEADER_SIZE = 40;
+    static final int COUNT = 0, LINK = 8, ENTRIES = 16;
+    static final int VALUE = 0, KEY_LENGTH = 8, KEY = 10;
+    static final int MAX_HEIGHT = 32;
+    private static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    @NotNull
+    private final MappedFile file;
+    private final List<MappedBytesStore> chunks = new ArrayList<>();
+    private final long chunkSize;
+    private final int pageSize;
+    private final int keySize;
+    private final int entrySize;
+    private final int maxEntries;
+    // an overflowing node with the new entry, and the key being passed up to the parent.
+    @NotNull
+    private final NativeBytesStore<Void> scratch;
+    @NotNull
+    private final NativeBytesStore<Void> separator;
+    private final long[] path = new long[MAX_HEIGHT + 1];
+    private final int[] pathIndex = new int[MAX_HEIGHT + 1];
+
+    private long root;
+    private int height;
+    private long pages;
+    private long size;
+    // the bulk load in progress, if any.
+    @Nullable
+    private BulkLoader loader;
+    private volatile boolean closed;
+
+    private MappedBPlusTree(@NotNull MappedFile file, @NotNull MappedBytesStore header, int pageSize, int keySize)
+            throws IllegalArgumentException {
+        this.file = file;
+        this.chunkSize = header.safeLimit() - header.start();
+        if (pageSize < 256 || Integer.bitCount(pageSize) != 1 || chunkSize % pageSize != 0)
+            throw new IllegalArgumentException("pageSize must be a power of 2 of at least 256 which divides the chunk size " + chunkSize);
+        if (keySize < 1 || keySize > 0xFFFF)
+            throw new IllegalArgumentException("keySize must be 1 to 65535, was " + keySize);
+        this.pageSize = pageSize;
+        this.keySize = keySize;
+        this.entrySize = (KEY + keySize + 7) & ~7;
+        this.maxEntries = (pageSize - ENTRIES) / entrySize;
+        if (maxEntries < 4)
+            throw new IllegalArgumentException("A page of " + pageSize + " bytes is too small for keys of " + keySize + " bytes");
+        chunks.add(header);
+
+        if (header.readVolatileLong(HEADER_MAGIC) == 0) {
+            header.writeInt(HEADER_PAGE_SIZE, pageSize);
+            header.writeInt(HEADER_KEY_SIZE, keySize);
+            root = 1;
+            pages = 2;
+            newPage(root);
+            writeHeader();
+            header.writeOrderedLong(HEADER_MAGIC, MAGIC);
+        } else {
+            if (header.readLong(HEADER_MAGIC) != MAGIC)
+                throw new IllegalArgumentException("Not a B+tree");
+            if (header.readInt(HEADER_PAGE_SIZE) != pageSize || header.readInt(HEADER_KEY_SIZE) != keySize)
+                throw new IllegalArgumentException("The tree has a page size of " + header.readInt(HEADER_PAGE_SIZE)
+                        + " and key size of " + header.readInt(HEADER_KEY_SIZE));
+            root = header.readLong(HEADER_ROOT);
+            height = header.readInt(HEADER_HEIGHT);
+            pages = header.readLong(HEADER_PAGES);
+            size = header.readLong(HEADER_SIZE);
+        }
+        scratch = NativeBytesStore.nativeStoreWithFixedCapacity((long) (maxEntries + 1) * entrySize);
+        separator = NativeBytesStore.nativeStoreWithFixedCapacity(entrySize);
+    }
+
+    /**
+     * Create a tree at the start of a MappedFile, or open the tree already there, which must have
+     * the same page and key sizes.
+     *
+     * @param pageSize   a power of 2 which divides the chunk size, e.g. 4096
+     * @param maxKeySize the longest key in bytes.
+     */
+    @NotNull
+    public static MappedBPlusTree of(@NotNull MappedFile file, int pageSize, int maxKeySize)
+            throws IOException, IllegalArgumentException {
+        MappedBytesStore header = file.acquireByteStore(0);
+        try {
+            return new MappedBPlusTree(file, header, pageSize, maxKeySize);
+        } catch (IllegalArgumentException e) {
+            header.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of entries which fit in a page.
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of levels of internal nodes above the leaves.
+     */
+    public synchronized int height() {
+        return height;
+    }
+
+    /**
+     * Add or replace the value for the readable bytes of a key.
+     *
+     * @return true if the key was added, false if its value was replaced.
+     * @throws IllegalArgumentException if the key is longer than the maximum key size.
+     * @throws IllegalStateException    if a bulk load hasn't finished.
+     */
+    public synchronized boolean put(@NotNull BytesStore key, long value)
+            throws IllegalArgumentException, IllegalStateException {
+        checkOpen();
+        checkNotLoading();
+        long keyOffset = key.readPosition();
+        int keyLength = keyLength(key);
+
+        long page = root;
+        for (int level = height; level > 0; level--) {
+            BytesStore store = store(page);
+            long offset = offset(page);
+            int index = upperBound(store, offset, key, keyOffset, keyLength);
+            path[level] = page;
+            pathIndex[level] = index;
+            page = child(store, offset, index);
+        }
+
+        BytesStore store = store(page);
+        long offset = offset(page);
+        int count = store.readInt(offset + COUNT);
+        int index = lowerBound(store, offset, count, key, keyOffset, keyLength);
+        if (index < count && compare(store, entry(offset, index), key, keyOffset, keyLength) == 0) {
+            store.writeLong(entry(offset, index) + VALUE, value);
+            return false;
+        }
+
+        if (count < maxEntries) {
+            shiftRight(store, offset, index, count);
+            writeEntry(store, entry(offset, index), value, key, keyOffset, keyLength);
+            store.writeInt(offset + COUNT, count + 1);
+        } else {
+            splitLeaf(page, index, value, key, keyOffset, keyLength);
+        }
+        size++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * @return the value for the readable bytes of a key, or <code>notFound</code>
+     */
+    public synchronized long get(@NotNull BytesStore key, long notFound) throws IllegalArgumentException {
+        checkOpen();
+        long keyOffset = key.readPosition();
+        int keyLength = keyLength(key);
+        long page = findLeaf(key, keyOffset, keyLength);
+        BytesStore store = store(page);
+        long offset = offset(page);
+        int count = store.readInt(offset + COUNT);
+        int index = lowerBound(store, offset, count, key, keyOffset, keyLength);
+        return index < count && compare(store, entry(offset, index), key, keyOffset, keyLength) == 0
+                ? store.readLong(entry(offset, index) + VALUE)
+                : notFound;
+    }
+
+    /**
+     * @return a cursor which can be reused for many scans.
+     */
+    @NotNull
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Start loading keys in increasing order into an empty tree.  Until {@link BulkLoader#finish()}
+     * is called, keys can't be put and the loaded keys are not visible to get or a Cursor.
+     *
+     * @param fill the fraction of each page to fill, e.g. 1.0 if no more keys will be added, or
+     *             less to leave space for keys added later.
+     * @throws IllegalStateException if the tree isn't empty or another bulk load hasn't finished.
+     */
+    @NotNull
+    public synchronized BulkLoader bulkLoader(double fill) throws IllegalArgumentException, IllegalStateException {
+        checkOpen();
+        checkNotLoading();
+        if (size > 0)
+            throw new IllegalStateException("The tree has " + size + " entries");
+        if (!(fill > 0 && fill <= 1))
+            throw new IllegalArgumentException("fill must be more than 0 and up to 1, was " + fill);
+        loader = new BulkLoader(Math.max(2, (int) (maxEntries * fill)));
+        return loader;
+    }
+
+    private long findLeaf(@NotNull BytesStore key, long keyOffset, int keyLength) {
+        long page = root;
+        for (int level = height; level > 0; level--) {
+            BytesStore store = store(page);
+            long offset = offset(page);
+            page = child(store, offset, upperBound(store, offset, key, keyOffset, keyLength));
+        }
+        return page;
+    }
+
+    private long child(@NotNull BytesStore store, long offset, int index) {
+        return index == 0 ? store.readLong(offset + LINK) : store.readLong(entry(offset, index - 1) + VALUE);
+    }
+
+    private void splitLeaf(long page, int index, long value, @NotNull BytesStore key, long keyOffset, int keyLength) {
+        BytesStore store = store(page);
+        long offset = offset(page);
+        fillScratch(store, offset, index);
+        writeEntry(scratch, (long) index * entrySize, value, key, keyOffset, keyLength);
+
+        int total = maxEntries + 1;
+        int leftCount = total / 2;
+        long right = allocatePage();
+        BytesStore rightStore = store(right);
+        long rightOffset = offset(right);
+        for (int i = 0; i < leftCount; i++)
+            copyEntry(scratch, (long) i * entrySize, store, entry(offset, i));
+        for (int i = leftCount; i < total; i++)
+            copyEntry(scratch, (long) i * entrySize, rightStore, entry(rightOffset, i - leftCount));
+        store.writeInt(offset + COUNT, leftCount);
+        rightStore.writeInt(rightOffset + COUNT, total - leftCount);
+        rightStore.writeLong(rightOffset + LINK, store.readLong(offset + LINK));
+        store.writeLong(offset + LINK, right);
+
+        copyEntry(rightStore, entry(rightOffset, 0), separator, 0);
+        separator.writeLong(VALUE, right);
+        insertSeparator(1);
+    }
+
+    /**
+     * Insert the separator into the parent at <code>level</code> on the path, splitting as needed.
+     */
+    private void insertSeparator(int level) {
+        for (; ; level++) {
+            if (level > height) {
+                if (height == MAX_HEIGHT)
+                    throw new IllegalStateException("The tree is too high");
+                long newRoot = allocatePage();
+                BytesStore store = store(newRoot);
+                long offset = offset(newRoot);
+                store.writeLong(offset + LINK, root);
+                copyEntry(separator, 0, store, entry(offset, 0));
+                store.writeInt(offset + COUNT, 1);
+                root = newRoot;
+                height++;
+                return;
+            }
+
+            long page = path[level];
+            int index = pathIndex[level];
+            BytesStore store = store(page);
+            long offset = offset(page);
+            int count = store.readInt(offset + COUNT);
+            if (count < maxEntries) {
+                shiftRight(store, offset, index, count);
+                copyEntry(separator, 0, store, entry(offset, index));
+                store.writeInt(offset + COUNT, count + 1);
+                return;
+            }
+
+            fillScratch(store, offset, index);
+            copyEntry(separator, 0, scratch, (long) index * entrySize);
+            // the middle key moves up and its child becomes the leftmost of the new node.
+            int total = maxEntries + 1;
+            int middle = total / 2;
+            long right = allocatePage();
+            BytesStore rightStore = store(right);
+            long rightOffset = offset(right);
+            for (int i = 0; i < middle; i++)
+                copyEntry(scratch, (long) i * entrySize, store, entry(offset, i));
+            for (int i = middle + 1; i < total; i++)
+                copyEntry(scratch, (long) i * entrySize, rightStore, entry(rightOffset, i - middle - 1));
+            store.writeInt(offset + COUNT, middle);
+            rightStore.writeInt(rightOffset + COUNT, total - middle - 1);
+            rightStore.writeLong(rightOffset + LINK, scratch.readLong((long) middle * entrySize + VALUE));
+
+            copyEntry(scratch, (long) middle * entrySize, separator, 0);
+            separator.writeLong(VALUE, right);
+        }
+    }
+
+    /**
+     * Copy a full node to the scratch space leaving a gap at <code>index</code>.
+     */
+    private void fillScratch(@NotNull BytesStore store, long offset, int index) {
+        for (int i = 0; i < maxEntries; i++)
+            copyEntry(store, entry(offset, i), scratch, (long) (i < index ? i : i + 1) * entrySize);
+    }
+
+    private void shiftRight(@NotNull BytesStore store, long offset, int index, int count) {
+        // one entry at a time, from the end, so the copies don't overlap.
+        for (int i = count - 1; i >= index; i--)
+            copyEntry(store, entry(offset, i), store, entry(offset, i + 1));
+    }
+
+    private void copyEntry(@NotNull BytesStore from, long fromOffset, @NotNull BytesStore to, long toOffset) {
+        to.write(toOffset, from, fromOffset, entrySize);
+    }
+
+    private void writeEntry(@NotNull BytesStore store, long entry, long value,
+                            @NotNull BytesStore key, long keyOffset, int keyLength) {
+        store.writeLong(entry + VALUE, value);
+        store.writeShort(entry + KEY_LENGTH, (short) keyLength);
+        store.write(entry + KEY, key, keyOffset, keyLength);
+    }
+
+    private int lowerBound(@NotNull BytesStore store, long offset, int count,
+                           @NotNull BytesStore key, long keyOffset, int keyLength) {
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(store, entry(offset, mid), key, keyOffset, keyLength) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of keys in an internal node less than or equal to the key, which is the
+     * index of the child to follow.
+     */
+    private int upperBound(@NotNull BytesStore store, long offset,
+                           @NotNull BytesStore key, long keyOffset, int keyLength) {
+        int low = 0, high = store.readInt(offset + COUNT);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(store, entry(offset, mid), key, keyOffset, keyLength) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Compare the key of an entry with a key as unsigned bytes, a long at a time.
+     */
+    static int compare(@NotNull BytesStore store, long entry,
+                       @NotNull BytesStore key, long keyOffset, int keyLength) {
+        long entryKey = entry + KEY;
+        int entryLength = store.readUnsignedShort(entry + KEY_LENGTH);
+        int length = Math.min(entryLength, keyLength);
+        int i = 0;
+        for (; i <= length - 8; i += 8) {
+            long a = store.readLong(entryKey + i);
+            long b = key.readLong(keyOffset + i);
+            if (a != b)
+                return IS_LITTLE_ENDIAN
+                        ? Long.compareUnsigned(Long.reverseBytes(a), Long.reverseBytes(b))
+                        : Long.compareUnsigned(a, b);
+        }
+        for (; i < length; i++) {
+            int cmp = store.readUnsignedByte(entryKey + i) - key.readUnsignedByte(keyOffset + i);
+            if (cmp != 0)
+                return cmp;
+        }
+        return Integer.compare(entryLength, keyLength);
+    }
+
+    private long entry(long offset, int index) {
+        return offset + ENTRIES + (long) index * entrySize;
+    }
+
+    private long offset(long page) {
+        return page * pageSize;
+    }
+
+    @NotNull
+    private BytesStore store(long page) throws IORuntimeException {
+        int chunk = (int) (offset(page) / chunkSize);
+        while (chunks.size() <= chunk)
+            chunks.add(null);
+        MappedBytesStore store = chunks.get(chunk);
+        if (store == null) {
+            try {
+                store = file.acquireByteStore(offset(page));
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+            chunks.set(chunk, store);
+        }
+        return store;
+    }
+
+    private long allocatePage() {
+        long page = pages++;
+        newPage(page);
+        return page;
+    }
+
+    private void newPage(long page) {
+        BytesStore store = store(page);
+        long offset = offset(page);
+        store.writeInt(offset + COUNT, 0);
+        store.writeLong(offset + LINK, 0L);
+    }
+
+    private void writeHeader() {
+        BytesStore header = chunks.get(0);
+        header.writeLong(HEADER_ROOT, root);
+        header.writeInt(HEADER_HEIGHT, height);
+        header.writeLong(HEADER_PAGES, pages);
+        header.writeLong(HEADER_SIZE, size);
+    }
+
+    private int keyLength(@NotNull BytesStore key) throws IllegalArgumentException {
+        long length = key.readRemaining();
+        if (length > keySize)
+            throw new IllegalArgumentException("The key of " + length + " bytes is longer than " + keySize);
+        return (int) length;
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (closed)
+            throw new IllegalStateException("Closed");
+    }
+
+    private void checkNotLoading() throws IllegalStateException {
+        if (loader != null)
+            throw new IllegalStateException("A bulk load hasn't finished");
+    }
+
+    /**
+     * Release the mapped chunks.  The data in the MappedFile remains.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (MappedBytesStore store : chunks)
+            if (store != null)
+                store.release();
+        chunks.clear();
+        scratch.release();
+        separator.release();
+    }
+
+    /**
+     * Fills the pages from left to right with keys in increasing order, building each level of
+     * internal nodes as it goes, keeping only the rightmost node of each level.
+     */
+    public final class BulkLoader {
+        private final int perPage;
+        private final long[] rightmost = new long[MAX_HEIGHT + 1];
+        private int levels;
+        private long leaf;
+        private long last = -1;
+
+        BulkLoader(int perPage) {
+            this.perPage = Math.min(perPage, maxEntries);
+            this.leaf = root;
+        }
+
+        /**
+         * Add the readable bytes of a key which is greater than the last.
+         *
+         * @throws IllegalArgumentException if the key is not greater than the last or too long.
+         * @throws IllegalStateException    if the load has finished.
+         */
+        public void add(@NotNull BytesStore key, long value) throws IllegalArgumentException, IllegalStateException {
+            synchronized (MappedBPlusTree.this) {
+                checkLoading();
+                long keyOffset = key.readPosition();
+                int keyLength = keyLength(key);
+                if (last >= 0 && compare(store(last / pageSize), last, key, keyOffset, keyLength) >= 0)
+                    throw new IllegalArgumentException("Keys must be added in increasing order");
+
+                BytesStore store = store(leaf);
+                long offset = offset(leaf);
+                int count = store.readInt(offset + COUNT);
+                if (count < perPage) {
+                    writeEntry(store, entry(offset, count), value, key, keyOffset, keyLength);
+                    store.writeInt(offset + COUNT, count + 1);
+                    last = entry(offset, count);
+                } else {
+                    long previous = leaf;
+                    leaf = allocatePage();
+                    store.writeLong(offset + LINK, leaf);
+                    store = store(leaf);
+                    offset = offset(leaf);
+                    writeEntry(store, entry(offset, 0), value, key, keyOffset, keyLength);
+                    store.writeInt(offset + COUNT, 1);
+                    last = entry(offset, 0);
+                    copyEntry(store, last, separator, 0);
+                    separator.writeLong(VALUE, leaf);
+                    addSeparator(previous, leaf);
+                }
+                size++;
+            }
+        }
+
+        private void addSeparator(long left, long right) {
+            for (int level = 1; ; level++) {
+                if (level > levels) {
+                    if (level > MAX_HEIGHT)
+                        throw new IllegalStateException("The tree is too high");
+                    // the first split of the level below, so this is its first node.
+                    rightmost[level] = allocatePage();
+                    store(rightmost[level]).writeLong(offset(rightmost[level]) + LINK, left);
+                    levels = level;
+                }
+                long node = rightmost[level];
+                BytesStore store = store(node);
+                long offset = offset(node);
+                int count = store.readInt(offset + COUNT);
+                if (count < perPage) {
+                    copyEntry(separator, 0, store, entry(offset, count));
+                    store.writeInt(offset + COUNT, count + 1);
+                    return;
+                }
+                // start a new node with the right child, and pass the key up to link it in.
+                long next = allocatePage();
+                store(next).writeLong(offset(next) + LINK, right);
+                rightmost[level] = next;
+                separator.writeLong(VALUE, next);
+                left = node;
+                right = next;
+            }
+        }
+
+        /**
+         * Make the loaded keys visible, after which keys can be put in any order.
+         */
+        public void finish() throws IllegalStateException {
+            synchronized (MappedBPlusTree.this) {
+                checkLoading();
+                if (levels > 0) {
+                    root = rightmost[levels];
+                    height = levels;
+                }
+                writeHeader();
+                loader = null;
+            }
+        }
+
+        private void checkLoading() throws IllegalStateException {
+            checkOpen();
+            if (loader != this)
+                throw new IllegalStateException("The bulk load has finished");
+        }
+    }
+
+    /**
+     * Iterates over the entries in key order from a starting key, reading them in place.
+     */
+    public final class Cursor {
+        private BytesStore store;
+        private long page;
+        private long offset;
+        private int count;
+        private int index;
+
+        Cursor() {
+        }
+
+        /**
+         * Move to the first entry.
+         *
+         * @return false if the tree is empty.
+         */
+        public boolean first() throws IllegalStateException {
+            checkOpen();
+            long page = root;
+            for (int level = height; level > 0; level--)
+                page = child(store(page), offset(page), 0);
+            load(page, 0);
+            return skipToEntry();
+        }
+
+        /**
+         * Move to the first entry with a key greater than or equal to the readable bytes of a key.
+         *
+         * @return false if there is no such entry.
+         */
+        public boolean seek(@NotNull BytesStore key) throws IllegalArgumentException, IllegalStateException {
+            checkOpen();
+            long keyOffset = key.readPosition();
+            int keyLength = MappedBPlusTree.this.keyLength(key);
+            load(findLeaf(key, keyOffset, keyLength), 0);
+            index = lowerBound(store, offset, count, key, keyOffset, keyLength);
+            return skipToEntry();
+        }
+
+        /**
+         * Move to the next entry.
+         *
+         * @return false if there are no more.
+         */
+        public boolean next() throws IllegalStateException {
+            checkOpen();
+            if (page == 0)
+                return false;
+            index++;
+            return skipToEntry();
+        }
+
+        public boolean isValid() throws IllegalStateException {
+            checkOpen();
+            return page != 0;
+        }
+
+        public long value() throws IllegalStateException {
+            return store.readLong(entry() + VALUE);
+        }
+
+        public int keyLength() throws IllegalStateException {
+            return store.readUnsignedShort(entry() + KEY_LENGTH);
+        }
+
+        /**
+         * Append the key to <code>bytes</code>.
+         */
+        public void readKey(@NotNull Bytes bytes) throws IllegalStateException {
+            long entry = entry();
+            bytes.write(store, entry + KEY, store.readUnsignedShort(entry + KEY_LENGTH));
+        }
+
+        /**
+         * @return less than, equal to or greater than 0 as the key of this entry is less than, equal
+         * to or greater than the readable bytes of <code>key</code>
+         */
+        public int compareKey(@NotNull BytesStore key) throws IllegalStateException {
+            return compare(store, entry(), key, key.readPosition(), (int) key.readRemaining());
+        }
+
+        private long entry() throws IllegalStateException {
+            checkOpen();
+            if (page == 0)
+                throw new IllegalStateException("No entry");
+            return MappedBPlusTree.this.entry(offset, index);
+        }
+
+        private void load(long page, int index) {
+            this.page = page;
+            this.store = store(page);
+            this.offset = offset(page);
+            this.count = store.readInt(offset + COUNT);
+            this.index = index;
+        }
+
+        private boolean skipToEntry() {
+            while (index >= count) {
+                long next = store.readLong(offset + LINK);
+                if (next == 0) {
+                    page = 0;
+                    return false;
+                }
+                load(next, 0);
+            }
+            return true;
+        }
+    }
+}
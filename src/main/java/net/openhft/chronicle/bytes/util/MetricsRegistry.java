@@ -0,0 +1,357 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named counters and latency histograms laid out in a BytesStore.  In a MappedBytesStore
+ * several processes can register and update metrics, and a monitoring process can read them
+ * while they are updated, without any IPC.
+ *
+ * <p>After a header holding the bytes used, each metric is an entry of a 64 byte header with
+ * its size, type and name, followed by its values, each entry on its own cache lines.  An entry
+ * is claimed by setting its size with compareAndSwapInt before the bytes used are moved past it,
+ * so its size is known even if the process adding it dies, and its type is set last to publish
+ * it.  If two processes register the same name at once, the later entry is marked dead and both
+ * use the first.  An entry which isn't published within 100 ms is marked dead and skipped.
+ * Metrics are never removed.
+ *
+ * <p>Values are updated with addAndGetLong and compareAndSwapLong, so every update is atomic, but
+ * a snapshot of a histogram is not taken at a single point in time.
+ */
+public class MetricsRegistry {
+    public static final int MAX_NAME_LENGTH = 55;
+
+    static final int USED = 0, ENTRIES = 64;
+    static final int ENTRY_SIZE = 0, ENTRY_TYPE = 4, ENTRY_NAME = 8, ENTRY_VALUES = 64;
+    static final int COUNTER = 1, HISTOGRAM = 2, DEAD = -1;
+    static final long PUBLISH_TIMEOUT_NS = 100_000_000L;
+
+    @NotNull
+    private final BytesStore store;
+    private final long base;
+    private final long limit;
+
+    /**
+     * @throws IllegalArgumentException if the store is too small for any metrics.
+     */
+    public MetricsRegistry(@NotNull BytesStore store) throws IllegalArgumentException {
+        this.store = store;
+        this.base = store.start();
+        this.limit = store.safeLimit();
+        if (limit - base < ENTRIES + Counter.SIZE)
+            throw new IllegalArgumentException("Store is too small");
+    }
+
+    /**
+     * Find or add a counter.
+     *
+     * @throws IllegalArgumentException if the name is too long, not 8-bit or used by a histogram.
+     * @throws IllegalStateException    if the store is full.
+     */
+    @NotNull
+    public Counter counter(@NotNull String name) throws IllegalArgumentException, IllegalStateException {
+        return new Counter(store, acquire(name, COUNTER, Counter.SIZE) + ENTRY_VALUES);
+    }
+
+    /**
+     * Find or add a histogram.
+     *
+     * @throws IllegalArgumentException if the name is too long, not 8-bit or used by a counter.
+     * @throws IllegalStateException    if the store is full.
+     */
+    @NotNull
+    public Histogram histogram(@NotNull String name) throws IllegalArgumentException, IllegalStateException {
+        return new Histogram(store, acquire(name, HISTOGRAM, Histogram.SIZE) + ENTRY_VALUES);
+    }
+
+    /**
+     * @return the counters published so far, in the order they were added.
+     */
+    @NotNull
+    public Map<String, Counter> counters() {
+        Map<String, Counter> counters = new LinkedHashMap<>();
+        for (long entry = base + ENTRIES, end = entriesEnd(); entry < end; entry += store.readVolatileInt(entry + ENTRY_SIZE)) {
+            if (store.readVolatileInt(entry + ENTRY_TYPE) == COUNTER)
+                counters.putIfAbsent(readName(entry), new Counter(store, entry + ENTRY_VALUES));
+        }
+        return counters;
+    }
+
+    /**
+     * @return the histograms published so far, in the order they were added.
+     */
+    @NotNull
+    public Map<String, Histogram> histograms() {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        for (long entry = base + ENTRIES, end = entriesEnd(); entry < end; entry += store.readVolatileInt(entry + ENTRY_SIZE)) {
+            if (store.readVolatileInt(entry + ENTRY_TYPE) == HISTOGRAM)
+                histograms.putIfAbsent(readName(entry), new Histogram(store, entry + ENTRY_VALUES));
+        }
+        return histograms;
+    }
+
+    private long entriesEnd() {
+        return base + ENTRIES + store.readVolatileLong(base + USED);
+    }
+
+    private long acquire(@NotNull String name, int type, int size) throws IllegalArgumentException, IllegalStateException {
+        byte[] nameBytes = nameBytes(name);
+        int entrySize = ENTRY_VALUES + size;
+        while (true) {
+            long used = store.readVolatileLong(base + USED);
+            long entry = base + ENTRIES + used;
+            long found = find(nameBytes, entry, type);
+            if (found >= 0)
+                return found;
+            if (entry + entrySize > limit)
+                throw new IllegalStateException("No space for " + name);
+            if (!store.compareAndSwapInt(entry + ENTRY_SIZE, 0, entrySize)) {
+                // another process has claimed this entry but not moved the bytes used past it yet.
+                store.compareAndSwapLong(base + USED, used, used + store.readVolatileInt(entry + ENTRY_SIZE));
+                continue;
+            }
+            store.compareAndSwapLong(base + USED, used, used + entrySize);
+            store.writeByte(entry + ENTRY_NAME, (byte) nameBytes.length);
+            store.write(entry + ENTRY_NAME + 1, nameBytes, 0, nameBytes.length);
+
+            // another process could have added the same name just before, in which case use that one.
+            try {
+                found = find(nameBytes, entry, type);
+            } catch (IllegalArgumentException e) {
+                store.compareAndSwapInt(entry + ENTRY_TYPE, 0, DEAD);
+                throw e;
+            }
+            if (found >= 0) {
+                store.compareAndSwapInt(entry + ENTRY_TYPE, 0, DEAD);
+                return found;
+            }
+            if (store.compareAndSwapInt(entry + ENTRY_TYPE, 0, type))
+                return entry;
+            // this entry took so long it was marked dead, so add another.
+        }
+    }
+
+    private long find(@NotNull byte[] nameBytes, long end, int type) throws IllegalArgumentException {
+        for (long entry = base + ENTRIES; entry < end; entry += store.readVolatileInt(entry + ENTRY_SIZE)) {
+            int entryType = awaitPublished(entry);
+            if (entryType == DEAD || !nameEquals(entry, nameBytes))
+                continue;
+            if (entryType != type)
+                throw new IllegalArgumentException(readName(entry) + " is not a " + (type == COUNTER ? "counter" : "histogram"));
+            return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Wait for an entry being added to be published, marking it dead if that takes too long,
+     * e.g. because the process adding it has died.
+     *
+     * @return the type of the entry, or DEAD
+     */
+    private int awaitPublished(long entry) {
+        int type = store.readVolatileInt(entry + ENTRY_TYPE);
+        if (type != 0)
+            return type;
+        long start = System.nanoTime();
+        while ((type = store.readVolatileInt(entry + ENTRY_TYPE)) == 0) {
+            if (System.nanoTime() - start < PUBLISH_TIMEOUT_NS)
+                Thread.yield();
+            else if (store.compareAndSwapInt(entry + ENTRY_TYPE, 0, DEAD))
+                return DEAD;
+        }
+        return type;
+    }
+
+    private boolean nameEquals(long entry, @NotNull byte[] nameBytes) {
+        if (store.readUnsignedByte(entry + ENTRY_NAME) != nameBytes.length)
+            return false;
+        for (int i = 0; i < nameBytes.length; i++)
+            if (store.readByte(entry + ENTRY_NAME + 1 + i) != nameBytes[i])
+                return false;
+        return true;
+    }
+
+    @NotNull
+    private String readName(long entry) {
+        char[] chars = new char[store.readUnsignedByte(entry + ENTRY_NAME)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) store.readUnsignedByte(entry + ENTRY_NAME + 1 + i);
+        return new String(chars);
+    }
+
+    @NotNull
+    private static byte[] nameBytes(@NotNull String name) throws IllegalArgumentException {
+        if (name.length() > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("Name longer than " + MAX_NAME_LENGTH + ": " + name);
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) > 255)
+                throw new IllegalArgumentException("Name is not 8-bit: " + name);
+        return name.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * A counter in a MetricsRegistry.
+     */
+    public static final class Counter {
+        static final int SIZE = 64;
+
+        @NotNull
+        private final BytesStore store;
+        private final long offset;
+
+        Counter(@NotNull BytesStore store, long offset) {
+            this.store = store;
+            this.offset = offset;
+        }
+
+        public long increment() {
+            return store.addAndGetLong(offset, 1);
+        }
+
+        public long add(long delta) {
+            return store.addAndGetLong(offset, delta);
+        }
+
+        public boolean compareAndSet(long expected, long value) {
+            return store.compareAndSwapLong(offset, expected, value);
+        }
+
+        public void set(long value) {
+            store.writeOrderedLong(offset, value);
+        }
+
+        public long get() {
+            return store.readVolatileLong(offset);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * A histogram of non-negative values, e.g. latencies, in a MetricsRegistry.  Values below 8
+     * have a bucket each, and each power of 2 above that is split into 8 buckets, so a value
+     * is known to within 12.5%, for 488 buckets covering all longs.
+     */
+    public static final class Histogram {
+        static final int SUB_BUCKET_BITS = 3, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        public static final int BUCKETS = bucketFor(Long.MAX_VALUE) + 1;
+        static final int COUNT = 0, SUM = 8, MAX = 16, BUCKET_VALUES = 64;
+        static final int SIZE = BUCKET_VALUES + BUCKETS * 8;
+
+        @NotNull
+        private final BytesStore store;
+        private final long offset;
+
+        Histogram(@NotNull BytesStore store, long offset) {
+            this.store = store;
+            this.offset = offset;
+        }
+
+        /**
+         * @return the bucket a value is counted in, negative values being counted as 0.
+         */
+        public static int bucketFor(long value) {
+            if (value < SUB_BUCKETS)
+                return value < 0 ? 0 : (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS)
+                    + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @return the lowest value counted in a bucket.
+         */
+        public static long lowestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+            return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+        }
+
+        /**
+         * @return the highest value counted in a bucket.
+         */
+        public static long highestValueOf(int bucket) {
+            return bucket + 1 >= BUCKETS ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+        }
+
+        public void record(long value) {
+            store.addAndGetLong(offset + BUCKET_VALUES + bucketFor(value) * 8L, 1);
+            store.addAndGetLong(offset + COUNT, 1);
+            store.addAndGetLong(offset + SUM, value);
+            for (long max; value > (max = store.readVolatileLong(offset + MAX)); )
+                if (store.compareAndSwapLong(offset + MAX, max, value))
+                    break;
+        }
+
+        public long count() {
+            return store.readVolatileLong(offset + COUNT);
+        }
+
+        public long sum() {
+            return store.readVolatileLong(offset + SUM);
+        }
+
+        public long max() {
+            return store.readVolatileLong(offset + MAX);
+        }
+
+        /**
+         * Copy the bucket counts while values are being recorded.
+         *
+         * @param counts of at least {@link #BUCKETS} longs
+         * @return the total of the counts copied.
+         */
+        public long snapshot(@NotNull long[] counts) throws IllegalArgumentException {
+            if (counts.length < BUCKETS)
+                throw new IllegalArgumentException("Need " + BUCKETS + " buckets");
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                total += counts[i] = store.readVolatileLong(offset + BUCKET_VALUES + i * 8L);
+            return total;
+        }
+
+        /**
+         * @param fraction e.g. 0.99 for the 99th percentile
+         * @return the highest value of the bucket the percentile falls in, or 0 if empty.
+         */
+        public long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = snapshot(counts);
+            long target = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0)
+                    return Math.min(highestValueOf(i), max());
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.ReadBytesMarshallable;
+import net.openhft.chronicle.core.Maths;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+
+import static net.openhft.chronicle.bytes.util.BytesRingBuffer.*;
+
+/**
+ * A queue of variable length records in a BytesStore which any number of threads, or processes
+ * sharing a MappedBytesStore, can write to concurrently.  The layout of the header is the same as
+ * a {@link BytesRingBuffer}.
+ *
+ * <p>A producer claims space by moving the write position on with compareAndSwapLong, copies its
+ * record in, then commits it by writing an 8 byte header with writeOrderedLong.  The header holds
+ * the length and a stamp of how many times the buffer has wrapped, so the consumer stops at a
+ * record which has been claimed but not committed yet.  The consumer zeroes what it has read
+ * before freeing it, so a stale header is never mistaken for a new one.
+ *
+ * <p>There is a single consumer at a time; read() is synchronized so threads in one process can
+ * share it.
+ */
+public class MultiProducerBytesRingBuffer implements Closeable {
+    private static final int PADDING = -1;
+    private static final int RECORD_HEADER = 8;
+
+    @NotNull
+    private final BytesStore store;
+    private final long base;
+    private final long data;
+    private final long capacity;
+    private final long mask;
+    private final int lapShift;
+    @NotNull
+    private final Bytes view;
+    private volatile long cachedReadPosition;
+    private long readPosition;
+
+    /**
+     * Use all the store, or as much as is a power of 2 after the header.
+     *
+     * @throws IllegalArgumentException if the store has been used for a ring buffer of another size
+     */
+    public MultiProducerBytesRingBuffer(@NotNull BytesStore store) throws IllegalArgumentException {
+        this.store = store;
+        this.base = store.start();
+        long space = store.safeLimit() - base - HEADER;
+        if (space < 64)
+            throw new IllegalArgumentException("Store is too small");
+        this.capacity = Long.highestOneBit(space);
+        this.mask = capacity - 1;
+        this.lapShift = Long.numberOfTrailingZeros(capacity);
+        this.data = base + HEADER;
+        if (!store.compareAndSwapLong(base + CAPACITY, 0, capacity) && store.readVolatileLong(base + CAPACITY) != capacity)
+            throw new IllegalArgumentException("Capacity was " + store.readVolatileLong(base + CAPACITY) + " not " + capacity);
+        readPosition = store.readVolatileLong(base + READ_POSITION);
+        cachedReadPosition = readPosition;
+        view = store.bytesForRead();
+    }
+
+    /*
+     * The stamp of a record at a position, never 0.
+     */
+    private int stamp(long position) {
+        return (int) (position >>> lapShift) + 1;
+    }
+
+    /**
+     * Add a record.  The readable bytes are not consumed.  This is thread safe.
+     *
+     * @return false if there is not enough space.
+     * @throws IllegalArgumentException if the record could never fit.
+     */
+    public boolean offer(@NotNull BytesStore record) throws IllegalArgumentException {
+        int length = Maths.toInt32(record.readRemaining());
+        long size = align(RECORD_HEADER + length);
+        if (size > capacity)
+            throw new IllegalArgumentException("Record of " + length + " bytes is larger than the capacity " + capacity);
+        long position, offset, toEnd, needed;
+        do {
+            position = store.readVolatileLong(base + WRITE_POSITION);
+            offset = position & mask;
+            toEnd = capacity - offset;
+            needed = size <= toEnd ? size : toEnd + size;
+            if (position + needed - cachedReadPosition > capacity) {
+                cachedReadPosition = store.readVolatileLong(base + READ_POSITION);
+                if (position + needed - cachedReadPosition > capacity)
+                    return false;
+            }
+        } while (!store.compareAndSwapLong(base + WRITE_POSITION, position, position + needed));
+
+        if (size > toEnd) {
+            store.writeOrderedLong(data + offset, header(stamp(position), PADDING));
+            position += toEnd;
+            offset = 0;
+        }
+        store.write(data + offset + RECORD_HEADER, record, record.readPosition(), length);
+        store.writeOrderedLong(data + offset, header(stamp(position), length));
+        return true;
+    }
+
+    private static long header(int stamp, int length) {
+        return ((long) stamp << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Pass up to <code>maxRecords</code> committed records to the handler in order, then free
+     * them.  The Bytes passed must not be kept.
+     *
+     * @return the number of records read.
+     */
+    public synchronized int read(@NotNull ReadBytesMarshallable handler, int maxRecords) {
+        long start = readPosition;
+        long position = start;
+        int count = 0;
+        try {
+            while (count < maxRecords) {
+                long offset = position & mask;
+                long header = store.readVolatileLong(data + offset);
+                if ((int) (header >>> 32) != stamp(position))
+                    break;
+                int length = (int) header;
+                if (length == PADDING) {
+                    position += capacity - offset;
+                    continue;
+                }
+                view.readLimit(data + offset + RECORD_HEADER + length);
+                view.readPosition(data + offset + RECORD_HEADER);
+                // count it first so it is freed even if the handler throws.
+                position += align(RECORD_HEADER + length);
+                count++;
+                handler.readMarshallable(view);
+            }
+        } finally {
+            if (position != start) {
+                zeroOut(start, position);
+                readPosition = position;
+                store.writeOrderedLong(base + READ_POSITION, position);
+            }
+        }
+        return count;
+    }
+
+    private void zeroOut(long from, long to) {
+        while (from < to) {
+            long offset = from & mask;
+            long end = Math.min(capacity, offset + to - from);
+            store.zeroOut(data + offset, data + end);
+            from += end - offset;
+        }
+    }
+
+    /**
+     * @return the bytes of data, excluding the header
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes claimed and not yet read, including headers and padding
+     */
+    public long used() {
+        return store.readVolatileLong(base + WRITE_POSITION) - store.readVolatileLong(base + READ_POSITION);
+    }
+
+    /**
+     * Release the view of the store.  The store itself belongs to the caller.
+     */
+    @Override
+    public void close() {
+        view.release();
+    }
+}
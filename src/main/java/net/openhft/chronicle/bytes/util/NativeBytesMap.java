@@ -0,0 +1,520 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.BytesUtil;
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.algo.BytesStoreHash;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.OS;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A hash map of variable length byte keys to values held entirely in a NativeBytesStore, or the
+ * first chunk of a MappedFile so it persists and can be shared between processes.  Keys are
+ * hashed with BytesStoreHash so heap and native keys find the same entry.
+ *
+ * <p>The map is split into segments, each with its own lock taken with compareAndSwapInt, a table
+ * of slots using linear or Robin Hood probing, and an area the entries are appended to.  Each slot
+ * holds the low 32 bits of the hash and the offset of the entry so most mismatches don't read the
+ * entry.  A value is replaced in place if it fits, otherwise the entry is copied; the space left
+ * behind is reclaimed by compacting the segment when it runs out.
+ *
+ * <p>Lookups copy the value into a Bytes passed in so they don't allocate.  The capacity is fixed
+ * when the map is created.
+ */
+public class NativeBytesMap implements Closeable {
+    private static final int MAGIC = 0x4E424D31;
+    private static final int FORMATTING = -1;
+    private static final int MAX_SEGMENTS = 1 << 10;
+    private static final int SEGMENT_ENTRIES = 1 << 12;
+
+    // map header fields
+    private static final int HEADER_MAGIC = 0, HEADER_SEGMENTS = 4, HEADER_SLOTS = 8, HEADER_PROBING = 12;
+    private static final int HEADER_DATA_SIZE = 16, HEADER = 64;
+    // segment header fields
+    private static final int LOCK = 0, SIZE = 4, DATA_USED = 8, GARBAGE = 16, SEGMENT_HEADER = 64;
+    // entry header fields, followed by the key and the value.
+    private static final int ENTRY_HASH = 0, KEY_LENGTH = 8, VALUE_LENGTH = 12, VALUE_CAPACITY = 16;
+    private static final int ENTRY_HEADER = 24;
+
+    @NotNull
+    private final NativeBytesStore store;
+    private final long base;
+    private final int segmentMask;
+    private final int slots;
+    private final int slotMask;
+    private final int maxSize;
+    private final long dataSize;
+    private final long segmentSize;
+    @NotNull
+    private final Probing probing;
+    private volatile boolean closed;
+
+    NativeBytesMap(@NotNull NativeBytesStore store, int segments, int slots, long dataSize, @NotNull Probing probing)
+            throws IllegalArgumentException {
+        this.store = store;
+        this.base = store.start();
+        if (!store.compareAndSwapInt(base + HEADER_MAGIC, 0, FORMATTING)) {
+            // created already, possibly by another process.
+            while (store.readVolatileInt(base + HEADER_MAGIC) == FORMATTING)
+                Thread.yield();
+            if (store.readInt(base + HEADER_MAGIC) != MAGIC)
+                throw new IllegalArgumentException("Not a NativeBytesMap");
+            segments = store.readInt(base + HEADER_SEGMENTS);
+            slots = store.readInt(base + HEADER_SLOTS);
+            probing = Probing.values()[store.readInt(base + HEADER_PROBING)];
+            dataSize = store.readLong(base + HEADER_DATA_SIZE);
+        }
+        this.segmentMask = segments - 1;
+        this.slots = slots;
+        this.slotMask = slots - 1;
+        this.maxSize = slots - slots / 8;
+        this.dataSize = dataSize;
+        this.segmentSize = SEGMENT_HEADER + slots * 8L + dataSize;
+        this.probing = probing;
+
+        if (store.readInt(base + HEADER_MAGIC) == FORMATTING) {
+            long size = HEADER + segments * segmentSize;
+            if (size > store.safeLimit() - base) {
+                store.writeOrderedInt(base + HEADER_MAGIC, 0);
+                throw new IllegalArgumentException("The map needs " + size + " bytes but the store has " + (store.safeLimit() - base));
+            }
+            store.zeroOut(base + HEADER_MAGIC + 4, base + size);
+            store.writeInt(base + HEADER_SEGMENTS, segments);
+            store.writeInt(base + HEADER_SLOTS, slots);
+            store.writeInt(base + HEADER_PROBING, probing.ordinal());
+            store.writeLong(base + HEADER_DATA_SIZE, dataSize);
+            store.writeOrderedInt(base + HEADER_MAGIC, MAGIC);
+        }
+    }
+
+    /**
+     * Create a map in native memory.
+     *
+     * @param entries          the number of entries to size the map for
+     * @param averageKeySize   the expected size of a key
+     * @param averageValueSize the expected size of a value
+     * @param probing          how to resolve collisions
+     */
+    @NotNull
+    public static NativeBytesMap of(long entries, int averageKeySize, int averageValueSize, @NotNull Probing probing)
+            throws IllegalArgumentException {
+        int segments = segmentsFor(entries);
+        int slots = slotsFor(entries, segments);
+        long dataSize = dataSizeFor(entries, segments, averageKeySize, averageValueSize);
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(
+                HEADER + segments * (SEGMENT_HEADER + slots * 8L + dataSize));
+        try {
+            return new NativeBytesMap(store, segments, slots, dataSize, probing);
+        } catch (IllegalArgumentException e) {
+            store.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a map at the start of a MappedFile, or open the map already there in which case the
+     * sizes given are ignored.  The whole map must fit in the first chunk.
+     */
+    @NotNull
+    public static NativeBytesMap of(@NotNull MappedFile file, long entries, int averageKeySize, int averageValueSize,
+                                    @NotNull Probing probing) throws IOException, IllegalArgumentException {
+        int segments = segmentsFor(entries);
+        int slots = slotsFor(entries, segments);
+        long dataSize = dataSizeFor(entries, segments, averageKeySize, averageValueSize);
+        MappedBytesStore store = file.acquireByteStore(0);
+        try {
+            return new NativeBytesMap(store, segments, slots, dataSize, probing);
+        } catch (IllegalArgumentException e) {
+            store.release();
+            throw e;
+        }
+    }
+
+    static int segmentsFor(long entries) {
+        long segments = Math.min(MAX_SEGMENTS, Math.max(1, entries / SEGMENT_ENTRIES));
+        return (int) Long.highestOneBit(segments * 2 - 1);
+    }
+
+    static int slotsFor(long entries, int segments) {
+        // a load of no more than 3/4
+        long perSegment = (entries + segments - 1) / segments;
+        long slots = Math.max(16, perSegment * 4 / 3 + 1);
+        if (slots > 1 << 30)
+            throw new IllegalArgumentException("Too many entries " + entries);
+        return (int) Long.highestOneBit(slots * 2 - 1);
+    }
+
+    static long dataSizeFor(long entries, int segments, int averageKeySize, int averageValueSize) {
+        if (averageKeySize < 0 || averageValueSize < 0)
+            throw new IllegalArgumentException("Negative size");
+        long perSegment = (entries + segments - 1) / segments;
+        // allow for uneven segments, and space to replace values before compacting.
+        long dataSize = (perSegment + 16) * entrySize(averageKeySize, averageValueSize) * 3 / 2;
+        dataSize = (dataSize + 7) & ~7L;
+        if (dataSize >= 8L << 32)
+            throw new IllegalArgumentException("Segments too large");
+        return dataSize;
+    }
+
+    static int entrySize(int keyLength, int valueLength) {
+        return (ENTRY_HEADER + keyLength + valueLength + 7) & ~7;
+    }
+
+    /**
+     * Copy the value for the readable bytes of <code>key</code> into <code>value</code>.
+     *
+     * @return true if the key was found, otherwise <code>value</code> is not changed.
+     */
+    public boolean get(@NotNull BytesStore key, @NotNull Bytes value) throws IllegalStateException {
+        long hash = BytesStoreHash.hash(key);
+        long seg = segment(hash);
+        int keyLength = Maths.toInt32(key.readRemaining());
+        lock(seg);
+        try {
+            int index = find(seg, (int) hash, key, key.readPosition(), keyLength);
+            if (index < 0)
+                return false;
+            long entry = entry(seg, slot(seg, index));
+            value.clear();
+            value.write(store, entry + ENTRY_HEADER + keyLength, store.readInt(entry + VALUE_LENGTH));
+            return true;
+        } finally {
+            unlock(seg);
+        }
+    }
+
+    public boolean containsKey(@NotNull BytesStore key) throws IllegalStateException {
+        long hash = BytesStoreHash.hash(key);
+        long seg = segment(hash);
+        lock(seg);
+        try {
+            return find(seg, (int) hash, key, key.readPosition(), Maths.toInt32(key.readRemaining())) >= 0;
+        } finally {
+            unlock(seg);
+        }
+    }
+
+    /**
+     * Add or replace the value for a key.  Neither key nor value is consumed.
+     *
+     * @return true if a value was replaced.
+     * @throws IllegalStateException if the segment is full.
+     */
+    public boolean put(@NotNull BytesStore key, @NotNull BytesStore value) throws IllegalStateException {
+        long hash = BytesStoreHash.hash(key);
+        long seg = segment(hash);
+        long keyPosition = key.readPosition();
+        int keyLength = Maths.toInt32(key.readRemaining());
+        long valuePosition = value.readPosition();
+        int valueLength = Maths.toInt32(value.readRemaining());
+        lock(seg);
+        try {
+            int index = find(seg, (int) hash, key, keyPosition, keyLength);
+            if (index >= 0) {
+                long entry = entry(seg, slot(seg, index));
+                if (valueLength <= store.readInt(entry + VALUE_CAPACITY)) {
+                    store.write(entry + ENTRY_HEADER + keyLength, value, valuePosition, valueLength);
+                    store.writeInt(entry + VALUE_LENGTH, valueLength);
+                    return true;
+                }
+                // compacting keeps the old entry as the slot still refers to it.
+                long offset = allocate(seg, entrySize(keyLength, valueLength));
+                entry = entry(seg, slot(seg, index));
+                addGarbage(seg, entrySize(keyLength, store.readInt(entry + VALUE_CAPACITY)));
+                writeEntry(seg, offset, hash, key, keyPosition, keyLength, value, valuePosition, valueLength);
+                store.writeLong(slotOffset(seg, index), slotFor((int) hash, offset));
+                return true;
+            }
+            int size = store.readInt(seg + SIZE);
+            if (size >= maxSize)
+                throw new IllegalStateException("Segment full, size: " + size);
+            long offset = allocate(seg, entrySize(keyLength, valueLength));
+            writeEntry(seg, offset, hash, key, keyPosition, keyLength, value, valuePosition, valueLength);
+            insert(seg, slotFor((int) hash, offset));
+            store.writeInt(seg + SIZE, size + 1);
+            return false;
+        } finally {
+            unlock(seg);
+        }
+    }
+
+    /**
+     * @return true if the key was removed.
+     */
+    public boolean remove(@NotNull BytesStore key) throws IllegalStateException {
+        long hash = BytesStoreHash.hash(key);
+        long seg = segment(hash);
+        lock(seg);
+        try {
+            int index = find(seg, (int) hash, key, key.readPosition(), Maths.toInt32(key.readRemaining()));
+            if (index < 0)
+                return false;
+            long entry = entry(seg, slot(seg, index));
+            addGarbage(seg, entrySize(store.readInt(entry + KEY_LENGTH), store.readInt(entry + VALUE_CAPACITY)));
+            delete(seg, index);
+            store.writeInt(seg + SIZE, store.readInt(seg + SIZE) - 1);
+            return true;
+        } finally {
+            unlock(seg);
+        }
+    }
+
+    public long size() throws IllegalStateException {
+        checkOpen();
+        long size = 0;
+        for (int i = 0; i <= segmentMask; i++)
+            size += store.readVolatileInt(segmentAt(i) + SIZE);
+        return size;
+    }
+
+    public void clear() throws IllegalStateException {
+        for (int i = 0; i <= segmentMask; i++) {
+            long seg = segmentAt(i);
+            lock(seg);
+            try {
+                store.zeroOut(seg + SEGMENT_HEADER, seg + SEGMENT_HEADER + slots * 8L);
+                store.writeInt(seg + SIZE, 0);
+                store.writeLong(seg + DATA_USED, 0);
+                store.writeLong(seg + GARBAGE, 0);
+            } finally {
+                unlock(seg);
+            }
+        }
+    }
+
+    @NotNull
+    public Probing probing() {
+        return probing;
+    }
+
+    public int segments() {
+        return segmentMask + 1;
+    }
+
+    /**
+     * Release the memory, or the mapped chunk.  The data in a MappedFile remains.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        store.release();
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (closed)
+            throw new IllegalStateException("Closed");
+    }
+
+    private long segment(long hash) {
+        return segmentAt((int) (hash >>> 32) & segmentMask);
+    }
+
+    private long segmentAt(int index) {
+        return base + HEADER + index * segmentSize;
+    }
+
+    private void lock(long seg) throws IllegalStateException {
+        checkOpen();
+        for (int spins = 0; !store.compareAndSwapInt(seg + LOCK, 0, 1); spins++) {
+            if (spins > 1000)
+                Thread.yield();
+        }
+    }
+
+    private void unlock(long seg) {
+        store.writeOrderedInt(seg + LOCK, 0);
+    }
+
+    private long slotOffset(long seg, int index) {
+        return seg + SEGMENT_HEADER + index * 8L;
+    }
+
+    private long slot(long seg, int index) {
+        return store.readLong(slotOffset(seg, index));
+    }
+
+    /*
+     * A slot holds the low 32 bits of the hash and one more than the offset of the entry in 8 byte
+     * words so an empty slot is 0.
+     */
+    private static long slotFor(int tag, long offset) {
+        return ((long) tag << 32) | ((offset >>> 3) + 1);
+    }
+
+    private long entry(long seg, long slot) {
+        return seg + SEGMENT_HEADER + slots * 8L + ((slot & 0xFFFFFFFFL) - 1) * 8;
+    }
+
+    private int home(long slot) {
+        return (int) (slot >>> 32) & slotMask;
+    }
+
+    private int distance(long slot, int index) {
+        return (index - home(slot)) & slotMask;
+    }
+
+    private int find(long seg, int tag, @NotNull BytesStore key, long keyPosition, int keyLength) {
+        for (int index = tag & slotMask, distance = 0; ; index = (index + 1) & slotMask, distance++) {
+            long slot = slot(seg, index);
+            if (slot == 0)
+                return -1;
+            // under Robin Hood, the key would have displaced an entry closer to its home.
+            if (probing == Probing.ROBIN_HOOD && distance(slot, index) < distance)
+                return -1;
+            if ((int) (slot >>> 32) == tag) {
+                long entry = entry(seg, slot);
+                if (store.readInt(entry + KEY_LENGTH) == keyLength
+                        && BytesUtil.bytesEqual(store, entry + ENTRY_HEADER, key, keyPosition, keyLength))
+                    return index;
+            }
+        }
+    }
+
+    private void insert(long seg, long slot) {
+        for (int index = home(slot), distance = 0; ; index = (index + 1) & slotMask, distance++) {
+            long existing = slot(seg, index);
+            if (existing == 0) {
+                store.writeLong(slotOffset(seg, index), slot);
+                return;
+            }
+            if (probing == Probing.ROBIN_HOOD) {
+                int existingDistance = distance(existing, index);
+                if (existingDistance < distance) {
+                    store.writeLong(slotOffset(seg, index), slot);
+                    slot = existing;
+                    distance = existingDistance;
+                }
+            }
+        }
+    }
+
+    private void delete(long seg, int index) {
+        if (probing == Probing.ROBIN_HOOD) {
+            // shift back until an empty slot or one in its home.
+            for (int next = (index + 1) & slotMask; ; index = next, next = (next + 1) & slotMask) {
+                long slot = slot(seg, next);
+                if (slot == 0 || distance(slot, next) == 0)
+                    break;
+                store.writeLong(slotOffset(seg, index), slot);
+            }
+        } else {
+            // move back any later slot whose home is not between the gap and where it is.
+            int gap = index;
+            for (int next = (gap + 1) & slotMask; ; next = (next + 1) & slotMask) {
+                long slot = slot(seg, next);
+                if (slot == 0)
+                    break;
+                int home = home(slot);
+                boolean stays = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+                if (!stays) {
+                    store.writeLong(slotOffset(seg, gap), slot);
+                    gap = next;
+                }
+            }
+            index = gap;
+        }
+        store.writeLong(slotOffset(seg, index), 0);
+    }
+
+    private long allocate(long seg, int entrySize) throws IllegalStateException {
+        long used = store.readLong(seg + DATA_USED);
+        if (used + entrySize > dataSize && store.readLong(seg + GARBAGE) > 0) {
+            compact(seg);
+            used = store.readLong(seg + DATA_USED);
+        }
+        if (used + entrySize > dataSize)
+            throw new IllegalStateException("Segment full, needs " + entrySize + " bytes with " + (dataSize - used) + " free");
+        store.writeLong(seg + DATA_USED, used + entrySize);
+        return used;
+    }
+
+    private void addGarbage(long seg, int entrySize) {
+        store.writeLong(seg + GARBAGE, store.readLong(seg + GARBAGE) + entrySize);
+    }
+
+    private void writeEntry(long seg, long offset, long hash,
+                            @NotNull BytesStore key, long keyPosition, int keyLength,
+                            @NotNull BytesStore value, long valuePosition, int valueLength) {
+        long entry = seg + SEGMENT_HEADER + slots * 8L + offset;
+        store.writeLong(entry + ENTRY_HASH, hash);
+        store.writeInt(entry + KEY_LENGTH, keyLength);
+        store.writeInt(entry + VALUE_LENGTH, valueLength);
+        // any padding is room for a larger value.
+        store.writeInt(entry + VALUE_CAPACITY, entrySize(keyLength, valueLength) - ENTRY_HEADER - keyLength);
+        store.write(entry + ENTRY_HEADER, key, keyPosition, keyLength);
+        store.write(entry + ENTRY_HEADER + keyLength, value, valuePosition, valueLength);
+    }
+
+    /*
+     * Slide the entries still referred to by a slot down over those which are not, in order, so
+     * they only move towards the start.
+     */
+    private void compact(long seg) {
+        long data = seg + SEGMENT_HEADER + slots * 8L;
+        long used = store.readLong(seg + DATA_USED);
+        long to = 0;
+        for (long from = 0; from < used; ) {
+            long entry = data + from;
+            int entrySize = entrySize(store.readInt(entry + KEY_LENGTH), store.readInt(entry + VALUE_CAPACITY));
+            int tag = (int) store.readLong(entry + ENTRY_HASH);
+            int index = indexOf(seg, slotFor(tag, from));
+            if (index >= 0) {
+                if (to != from) {
+                    OS.memory().copyMemory(store.address(entry), store.address(data + to), entrySize);
+                    store.writeLong(slotOffset(seg, index), slotFor(tag, to));
+                }
+                to += entrySize;
+            }
+            from += entrySize;
+        }
+        store.writeLong(seg + DATA_USED, to);
+        store.writeLong(seg + GARBAGE, 0);
+    }
+
+    private int indexOf(long seg, long slot) {
+        for (int index = home(slot); ; index = (index + 1) & slotMask) {
+            long existing = slot(seg, index);
+            if (existing == slot)
+                return index;
+            if (existing == 0)
+                return -1;
+        }
+    }
+
+    public enum Probing {
+        /**
+         * Take the next free slot.
+         */
+        LINEAR,
+        /**
+         * Take slots from entries closer to their home slot so probe lengths are more even, and
+         * lookups for missing keys stop sooner.
+         */
+        ROBIN_HOOD
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Byteable;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.RandomDataOutput;
+import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * A sequence lock over a block of a BytesStore, e.g. a top of book or a config block, which many
+ * readers can read consistently without locking or writing to it.  The block is an 8 byte
+ * version followed by the data.  In a MappedBytesStore the readers and the writer can be in
+ * different processes.
+ *
+ * <p>The writer makes the version odd with writeOrderedLong before changing the data, and even
+ * again after.  A reader reads the version, waiting while it is odd, reads the data, and tries
+ * again if the version has changed.  There must only be one writer at a time.
+ *
+ * <p>The data is copied to and from a {@link Struct} of a fixed layout.  A reader can see a
+ * partial update before it retries, so a Struct must not act on the values it reads, e.g. use
+ * one as a length, until the read has completed.
+ */
+@SuppressWarnings("rawtypes")
+public class SeqLock implements Byteable {
+    public static final int VERSION_SIZE = 8;
+    private static final Memory MEMORY = OS.memory();
+
+    @Nullable
+    private BytesStore store;
+    private long offset;
+    private long length;
+
+    public SeqLock() {
+    }
+
+    public SeqLock(@NotNull BytesStore store, long offset, long length) {
+        bytesStore(store, offset, length);
+    }
+
+    /**
+     * @return the number of bytes needed for data of this size.
+     */
+    public static long sizeFor(long dataSize) {
+        return VERSION_SIZE + dataSize;
+    }
+
+    /**
+     * Point this at a block of <code>length</code> bytes including the version.  The version
+     * must be 8 byte aligned for it to be updated atomically.
+     */
+    @Override
+    public void bytesStore(@NotNull BytesStore store, long offset, long length)
+            throws IllegalArgumentException, BufferOverflowException {
+        if ((offset & 7) != 0)
+            throw new IllegalArgumentException("The offset " + offset + " is not 8 byte aligned");
+        if (length < VERSION_SIZE)
+            throw new IllegalArgumentException("The length " + length + " has no room for the version");
+        if (offset < store.start() || offset + length > store.safeLimit())
+            throw new BufferOverflowException();
+        this.store = store;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Nullable
+    @Override
+    public BytesStore bytesStore() {
+        return store;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public long maxSize() {
+        return length;
+    }
+
+    /**
+     * @return the offset of the first byte of data after the version.
+     */
+    public long dataOffset() {
+        return offset + VERSION_SIZE;
+    }
+
+    /**
+     * @return the version, which is even when no write is in progress and increases by 2 for
+     * each write.
+     */
+    public long version() {
+        return store().readVolatileLong(offset);
+    }
+
+    /**
+     * Start a write by making the version odd.
+     *
+     * @throws IllegalStateException if a write is already in progress.
+     */
+    public void beginWrite() throws IllegalStateException {
+        BytesStore store = store();
+        long version = store.readVolatileLong(offset);
+        if ((version & 1) != 0)
+            throw new IllegalStateException("Write already in progress, version " + version);
+        store.writeOrderedLong(offset, version + 1);
+        // stop the writes of the data being seen before the version is odd.
+        MEMORY.storeFence();
+    }
+
+    /**
+     * Finish a write by making the version even again.
+     *
+     * @throws IllegalStateException if a write isn't in progress.
+     */
+    public void endWrite() throws IllegalStateException {
+        BytesStore store = store();
+        long version = store.readVolatileLong(offset);
+        if ((version & 1) == 0)
+            throw new IllegalStateException("No write in progress, version " + version);
+        store.writeOrderedLong(offset, version + 1);
+    }
+
+    /**
+     * Wait for any write in progress to finish.
+     *
+     * @return the version to pass to {@link #validate(long)} after reading the data.
+     */
+    public long beginRead() {
+        BytesStore store = store();
+        long version;
+        while (((version = store.readVolatileLong(offset)) & 1) != 0)
+            Thread.yield();
+        return version;
+    }
+
+    /**
+     * @return true if the data read since {@link #beginRead()} returned <code>version</code> is
+     * consistent, or false if it must be read again.
+     */
+    public boolean validate(long version) {
+        // stop the reads of the data happening after the version is read again.
+        MEMORY.loadFence();
+        return store().readVolatileLong(offset) == version;
+    }
+
+    /**
+     * Copy the struct into the data.
+     */
+    public void write(@NotNull Struct struct) throws IllegalArgumentException {
+        checkSize(struct);
+        beginWrite();
+        try {
+            struct.writeTo(store, dataOffset());
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Copy a consistent snapshot of the data into the struct, retrying while it is being written.
+     *
+     * @return the version read.
+     */
+    public long read(@NotNull Struct struct) throws IllegalArgumentException {
+        checkSize(struct);
+        BytesStore store = store();
+        long dataOffset = dataOffset();
+        for (; ; ) {
+            long version = beginRead();
+            struct.readFrom(store, dataOffset);
+            if (validate(version))
+                return version;
+        }
+    }
+
+    private void checkSize(@NotNull Struct struct) throws IllegalArgumentException {
+        if (VERSION_SIZE + struct.size() > maxSize())
+            throw new IllegalArgumentException("A struct of " + struct.size() + " bytes doesn't fit in " + (maxSize() - VERSION_SIZE));
+    }
+
+    @NotNull
+    private BytesStore store() throws IllegalStateException {
+        if (store == null)
+            throw new IllegalStateException("No BytesStore set");
+        return store;
+    }
+
+    /**
+     * A class with a fixed layout of fields which can be copied to and from memory.
+     */
+    public interface Struct {
+        /**
+         * @return the number of bytes the fields use.
+         */
+        int size();
+
+        void readFrom(@NotNull RandomDataInput in, long offset);
+
+        void writeTo(@NotNull RandomDataOutput out, long offset);
+    }
+}
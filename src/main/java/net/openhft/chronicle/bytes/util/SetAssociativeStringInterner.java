@@ -0,0 +1,287 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesUtil;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.UTFDataFormatRuntimeException;
+import net.openhft.chronicle.bytes.algo.BytesStoreHash;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.util.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Interns UTF-8 text in Bytes as Strings in a set associative cache.  The hash of the bytes picks a
+ * set of <code>ways</code> entries, which are compared against the bytes directly, so a hit creates
+ * no objects.  On a miss the bytes are decoded straight into a new String, replacing the least
+ * recently used entry in the set, or one chosen by the CLOCK algorithm.
+ *
+ * <p>This is thread safe.  Sets are locked in stripes so threads interning different text rarely
+ * contend.  The hit, miss and eviction counts are sampled from each stripe in turn.
+ */
+public class SetAssociativeStringInterner {
+    private static final int MAX_STRIPES = 64;
+
+    @NotNull
+    private final String[] values;
+    @NotNull
+    private final int[] hashes;
+    @NotNull
+    private final Stripe[] stripes;
+    private final int ways;
+    private final int setMask;
+    private final int stripeMask;
+    @NotNull
+    private final Eviction eviction;
+    // the last use of each entry for LRU, or whether it has been used since the hand passed for CLOCK
+    @Nullable
+    private final long[] lastUsed;
+    @Nullable
+    private final boolean[] referenced;
+    @Nullable
+    private final int[] hands;
+
+    public SetAssociativeStringInterner(int capacity) throws IllegalArgumentException {
+        this(capacity, 4, Eviction.LRU);
+    }
+
+    /**
+     * @param capacity the number of Strings to hold, rounded up to a power of 2
+     * @param ways     the size of each set, a power of 2 e.g. 4 or 8
+     * @param eviction the policy to replace entries in a full set
+     */
+    public SetAssociativeStringInterner(int capacity, int ways, @NotNull Eviction eviction) throws IllegalArgumentException {
+        if (ways < 1 || Integer.bitCount(ways) != 1)
+            throw new IllegalArgumentException("ways must be a power of 2, was " + ways);
+        int n = Maths.nextPower2(capacity, Math.max(ways, 16));
+        int sets = n / ways;
+        this.ways = ways;
+        this.eviction = eviction;
+        values = new String[n];
+        hashes = new int[n];
+        setMask = sets - 1;
+        stripes = new Stripe[Math.min(sets, MAX_STRIPES)];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe();
+        stripeMask = stripes.length - 1;
+        if (eviction == Eviction.LRU) {
+            lastUsed = new long[n];
+            referenced = null;
+            hands = null;
+        } else {
+            lastUsed = null;
+            referenced = new boolean[n];
+            hands = new int[sets];
+        }
+    }
+
+    /**
+     * Intern the readable bytes without consuming them.
+     */
+    public String intern(@NotNull Bytes bytes)
+            throws IllegalArgumentException, UTFDataFormatRuntimeException, BufferUnderflowException {
+        return intern0(bytes, Maths.toInt32(bytes.readRemaining()));
+    }
+
+    /**
+     * Intern the next <code>length</code> bytes and consume them.
+     */
+    public String intern(@NotNull Bytes bytes, int length)
+            throws IllegalArgumentException, UTFDataFormatRuntimeException, BufferUnderflowException {
+        try {
+            return intern0(bytes, length);
+        } finally {
+            bytes.readSkip(length);
+        }
+    }
+
+    private String intern0(@NotNull Bytes bytes, int length) {
+        int hash = BytesStoreHash.hash32(bytes, length);
+        int set = hash & setMask;
+        int start = set * ways;
+        long position = bytes.readPosition();
+        Stripe stripe = stripes[set & stripeMask];
+        synchronized (stripe) {
+            for (int i = start; i < start + ways; i++) {
+                String s = values[i];
+                if (s != null && hashes[i] == hash && equalsUtf8(s, bytes, position, length)) {
+                    stripe.hits++;
+                    used(stripe, i);
+                    return s;
+                }
+            }
+            stripe.misses++;
+        }
+
+        // decode without holding the lock.
+        char[] chars = new char[length];
+        int count = BytesUtil.parseUtf8(bytes, position, chars, length);
+        String str = count == length ? StringUtils.newString(chars) : new String(chars, 0, count);
+
+        synchronized (stripe) {
+            // another thread might have added it.
+            for (int i = start; i < start + ways; i++) {
+                if (hashes[i] == hash && str.equals(values[i]))
+                    return values[i];
+            }
+            int victim = victim(set, start);
+            if (values[victim] != null)
+                stripe.evictions++;
+            values[victim] = str;
+            hashes[victim] = hash;
+            used(stripe, victim);
+        }
+        return str;
+    }
+
+    private void used(@NotNull Stripe stripe, int index) {
+        if (lastUsed != null)
+            lastUsed[index] = ++stripe.clock;
+        else
+            referenced[index] = true;
+    }
+
+    private int victim(int set, int start) {
+        for (int i = start; i < start + ways; i++)
+            if (values[i] == null)
+                return i;
+        if (lastUsed != null) {
+            int victim = start;
+            for (int i = start + 1; i < start + ways; i++)
+                if (lastUsed[i] < lastUsed[victim])
+                    victim = i;
+            return victim;
+        }
+        // pass over entries used since the hand last passed, at most once around.
+        int hand = hands[set];
+        while (referenced[start + hand]) {
+            referenced[start + hand] = false;
+            hand = (hand + 1) & (ways - 1);
+        }
+        hands[set] = (hand + 1) & (ways - 1);
+        return start + hand;
+    }
+
+    /*
+     * Compare a String with its UTF-8 encoding, a char at a time as BytesInternal encodes them.
+     */
+    private static boolean equalsUtf8(@NotNull String s, @NotNull RandomDataInput bytes, long offset, int length) {
+        int n = s.length();
+        if (n > length)
+            return false;
+        long end = offset + length;
+        for (int i = 0; i < n; i++) {
+            int c = s.charAt(i);
+            if (c < 0x80) {
+                if (offset >= end || bytes.readUnsignedByte(offset++) != c)
+                    return false;
+
+            } else if (c < 0x800) {
+                if (offset + 2 > end
+                        || bytes.readUnsignedByte(offset++) != (0xC0 | c >> 6)
+                        || bytes.readUnsignedByte(offset++) != (0x80 | c & 0x3F))
+                    return false;
+
+            } else {
+                if (offset + 3 > end
+                        || bytes.readUnsignedByte(offset++) != (0xE0 | c >> 12)
+                        || bytes.readUnsignedByte(offset++) != (0x80 | c >> 6 & 0x3F)
+                        || bytes.readUnsignedByte(offset++) != (0x80 | c & 0x3F))
+                    return false;
+            }
+        }
+        return offset == end;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public int ways() {
+        return ways;
+    }
+
+    @NotNull
+    public Eviction eviction() {
+        return eviction;
+    }
+
+    public long hits() {
+        long total = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                total += stripe.hits;
+            }
+        return total;
+    }
+
+    public long misses() {
+        long total = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                total += stripe.misses;
+            }
+        return total;
+    }
+
+    public long evictions() {
+        long total = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                total += stripe.evictions;
+            }
+        return total;
+    }
+
+    /**
+     * @return the number of Strings currently held
+     */
+    public int valueCount() {
+        int count = 0;
+        for (int s = 0; s <= setMask; s++) {
+            synchronized (stripes[s & stripeMask]) {
+                for (int i = s * ways; i < (s + 1) * ways; i++)
+                    if (values[i] != null)
+                        count++;
+            }
+        }
+        return count;
+    }
+
+    public enum Eviction {
+        /**
+         * Replace the least recently used entry in the set.
+         */
+        LRU,
+        /**
+         * Replace the next entry not used since the clock hand for the set last passed it.  This
+         * avoids updating a timestamp on every hit.
+         */
+        CLOCK
+    }
+
+    /*
+     * The lock and counters for a stripe of sets.
+     */
+    static final class Stripe {
+        long clock, hits, misses, evictions;
+    }
+}
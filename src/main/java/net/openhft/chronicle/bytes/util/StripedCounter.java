@@ -0,0 +1,123 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * A counter for many threads, possibly in different processes over a MappedBytesStore, which
+ * would contend on a single addAndGetLong.  The count is split over stripes, each on its own
+ * cache line, and summed when read.  A thread adds to the stripe its id hashes to, and if the
+ * compareAndSwapLong fails, because another thread is using that stripe, it moves to another
+ * stripe for this and later adds.
+ *
+ * <p>The sum is not a snapshot at one point in time while adds are in progress, but every add
+ * completed before sum() is called is included.
+ */
+public class StripedCounter {
+    static final int STRIPE_SIZE = 64;
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[]{probeFor(Thread.currentThread().getId())});
+
+    @NotNull
+    private final BytesStore store;
+    private final long offset;
+    private final int mask;
+
+    /**
+     * @param stripes a power of 2, see {@link #defaultStripes()}
+     * @throws BufferOverflowException if the stripes don't fit in the store.
+     */
+    public StripedCounter(@NotNull BytesStore store, long offset, int stripes)
+            throws IllegalArgumentException, BufferOverflowException {
+        if (stripes < 1 || Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("stripes must be a power of 2, was " + stripes);
+        if (offset < store.start() || offset + sizeFor(stripes) > store.safeLimit())
+            throw new BufferOverflowException();
+        this.store = store;
+        this.offset = offset;
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * @return the number of bytes needed for this many stripes.
+     */
+    public static long sizeFor(int stripes) {
+        return (long) stripes * STRIPE_SIZE;
+    }
+
+    /**
+     * @return the power of 2 at least twice the number of processors.
+     */
+    public static int defaultStripes() {
+        return Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+    }
+
+    private static int probeFor(long threadId) {
+        long h = threadId * 0x9E3779B97F4A7C15L;
+        int probe = (int) (h ^ (h >>> 32));
+        // xorshift never leaves 0
+        return probe == 0 ? 1 : probe;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        int[] probe = PROBE.get();
+        for (; ; ) {
+            long stripe = offset + (probe[0] & mask) * (long) STRIPE_SIZE;
+            long value = store.readVolatileLong(stripe);
+            if (store.compareAndSwapLong(stripe, value, value + delta))
+                return;
+            // contended, so move this thread to another stripe.
+            int p = probe[0];
+            p ^= p << 13;
+            p ^= p >>> 17;
+            p ^= p << 5;
+            probe[0] = p;
+        }
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++)
+            sum += store.readVolatileLong(offset + i * (long) STRIPE_SIZE);
+        return sum;
+    }
+
+    /**
+     * Set the count to zero.  Adds at the same time may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i <= mask; i++)
+            store.writeOrderedLong(offset + i * (long) STRIPE_SIZE, 0L);
+    }
+
+    public int stripes() {
+        return mask + 1;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryTextCodecTest {
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02X", b & 0xFF));
+        return sb.toString();
+    }
+
+    @Test
+    public void testHexRoundTrip() {
+        Random rand = new Random(1);
+        for (Bytes text : new Bytes[]{Bytes.allocateElasticDirect(), Bytes.elasticByteBuffer()}) {
+            Bytes decoded = Bytes.allocateElasticDirect();
+            for (int len = 0; len < 100; len++) {
+                byte[] data = new byte[len];
+                rand.nextBytes(data);
+                Bytes bytes = Bytes.wrapForRead(data);
+
+                text.clear();
+                text.appendHex(bytes);
+                assertEquals(hex(data), text.toString());
+                assertEquals(len, bytes.readRemaining());
+
+                decoded.clear();
+                text.parseHex(decoded);
+                assertArrayEquals(data, decoded.toByteArray());
+
+                decoded.clear();
+                Bytes.from(hex(data).toLowerCase() + ",").parseHex(decoded);
+                assertArrayEquals(data, decoded.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testParseHexStops() {
+        Bytes text = Bytes.from("0123456789abcdefABCDEF0123456789g12");
+        Bytes decoded = Bytes.allocateElasticDirect();
+        text.parseHex(decoded);
+        assertEquals("0123456789ABCDEFABCDEF0123456789", hex(decoded.toByteArray()));
+        assertEquals("12", text.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseHexOdd() {
+        Bytes.from("ABC").parseHex(Bytes.allocateElasticDirect());
+    }
+
+    @Test
+    public void testBase64RoundTrip() {
+        Random rand = new Random(2);
+        for (Bytes text : new Bytes[]{Bytes.allocateElasticDirect(), Bytes.wrapForWrite(ByteBuffer.allocate(256))}) {
+            Bytes decoded = Bytes.allocateElasticDirect();
+            for (int len = 0; len < 100; len++) {
+                byte[] data = new byte[len];
+                rand.nextBytes(data);
+
+                text.clear();
+                text.appendBase64(Bytes.wrapForRead(data));
+                String expected = Base64.getEncoder().encodeToString(data);
+                assertEquals(expected, text.toString());
+
+                decoded.clear();
+                text.parseBase64(decoded);
+                assertArrayEquals(data, decoded.toByteArray());
+
+                decoded.clear();
+                Bytes.from(expected + "\"rest").parseBase64(decoded);
+                assertArrayEquals(data, decoded.toByteArray());
+
+                decoded.clear();
+                Bytes.from(expected.replace("=", "")).parseBase64(decoded);
+                assertArrayEquals(data, decoded.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testParseBase64Stops() {
+        Bytes text = Bytes.from("SGVsbG8gV29ybGQ=,rest");
+        Bytes decoded = Bytes.allocateElasticDirect();
+        text.parseBase64(decoded);
+        assertEquals("Hello World", decoded.toString());
+        assertEquals("rest", text.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseBase64Incomplete() {
+        Bytes.from("SGVsb").parseBase64(Bytes.allocateElasticDirect());
+    }
+}
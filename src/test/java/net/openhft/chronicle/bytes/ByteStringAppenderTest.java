@@ -19,6 +19,10 @@ package net.openhft.chronicle.bytes;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 public class ByteStringAppenderTest {
 
     @Test
@@ -52,4 +56,68 @@ public class ByteStringAppenderTest {
             Assert.assertEquals(expected, bytes.parseLong(10));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAppendLongs() {
+        Random rand = new Random(1);
+        for (Bytes bytes : new Bytes[]{
+                Bytes.allocateElasticDirect(4),
+                Bytes.elasticByteBuffer(),
+                Bytes.wrapForWrite(new byte[32]),
+                Bytes.wrapForWrite(ByteBuffer.allocate(32))}) {
+            for (int i = 0; i < 10000; i++) {
+                long l = rand.nextLong() >> rand.nextInt(64);
+                for (long expected : new long[]{l, i, -i, Long.MIN_VALUE, Long.MAX_VALUE}) {
+                    bytes.clear();
+                    bytes.append(expected);
+                    Assert.assertEquals(Long.toString(expected), bytes.toString());
+                }
+                int n = (int) l;
+                for (int expected : new int[]{n, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+                    bytes.clear();
+                    bytes.append(expected);
+                    Assert.assertEquals(Integer.toString(expected), bytes.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAppendPowersOfTen() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        for (long p = 1; p > 0 && p <= Long.MAX_VALUE / 10; p *= 10) {
+            for (long expected : new long[]{p - 1, p, p + 1}) {
+                bytes.clear();
+                bytes.append(expected);
+                Assert.assertEquals(Long.toString(expected), bytes.toString());
+            }
+        }
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testAppendOverflow() {
+        Bytes bytes = Bytes.allocateDirect(8);
+        bytes.append(123456789L);
+    }
+
+    @Test
+    public void testAppendZeroPadded() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        bytes.appendZeroPadded(7, 3).append8bit(" ")
+                .appendZeroPadded(-7, 3).append8bit(" ")
+                .appendZeroPadded(123456789, 12).append8bit(" ")
+                .appendZeroPadded(Long.MAX_VALUE, 21).append8bit(" ")
+                .appendZeroPadded(0, 1);
+        Assert.assertEquals("007 -07 000123456789 009223372036854775807 0", bytes.toString());
+        try {
+            bytes.appendZeroPadded(-1, 1);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            bytes.appendZeroPadded(100, 2);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -17,8 +17,11 @@
 package net.openhft.chronicle.bytes;
 
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Random;
+
 public class ByteStringParserTest   {
 
     @Test
@@ -65,4 +68,136 @@ public class ByteStringParserTest   {
 
         Assert.assertEquals(expected, BytesInternal.parseLong(b));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseLongs() {
+        Bytes b = Bytes.allocateElasticDirect();
+        long[] values = {0, 1, -1, 12345678, -123456789, 1234567890123456789L, Long.MAX_VALUE, Long.MIN_VALUE + 1,
+                20160101123456789L, 99999999, 100000000};
+        for (long value : values) {
+            b.clear();
+            b.append(value).writeByte((byte) ' ');
+            b.append(value).writeByte((byte) ']');
+            Assert.assertEquals(value, b.parseLong(0));
+            Assert.assertEquals(value, BytesInternal.parseLong(b));
+            Assert.assertEquals(value, BytesInternal.parseLong(b));
+            Assert.assertEquals(']', b.readUnsignedByte());
+        }
+        b.clear();
+        b.append8bit("1_000_000_000 12345678_90 ");
+        Assert.assertEquals(1_000_000_000L, BytesInternal.parseLong(b));
+        Assert.assertEquals(1234567890L, BytesInternal.parseLong(b));
+        Assert.assertEquals(1_000_000_000L, b.parseLong(0));
+        b.release();
+    }
+
+    @Test
+    public void testParseFixedWidthLong() {
+        Bytes b = Bytes.allocateElasticDirect();
+        b.writeSkip(40);
+        long[] values = {0, 7, -7, 12345678, -1234567, 123456789012345L, -12345678901234L};
+        for (long value : values) {
+            for (int digits : new int[]{8, 15, 19}) {
+                if (Long.toString(value).length() > digits)
+                    continue;
+                b.append(3, value, digits);
+                Assert.assertEquals(value, b.parseLong(3, digits));
+            }
+        }
+        b.writeUnsignedByte(5, 'x');
+        try {
+            b.parseLong(3, 8);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        b.release();
+    }
+
+    @Test
+    public void testParseDoubleCorpus() {
+        String[] texts = {
+                "0", "-0", "0.0", "1", "+1", "-1.5", "1.", ".5", "0.1", "0.3", "123.1234", "1e3", "1E-3",
+                "2.5e+10", "-7.25E-2", "1e22", "1e23", "1.7976931348623157e308", "1.8e308", "4.9e-324",
+                "2.4703282292062327e-324", "2.4703282292062328e-324", "2.2250738585072011e-308",
+                "2.2250738585072014e-308", "9007199254740993", "9007199254740992.5",
+                "0.000000000000000000000000000001234", "12345678901234567890123456789",
+                "1.00000000000000011102230246251565404236316680908203125",
+                "1.00000000000000011102230246251565404236316680908203124",
+                "1.00000000000000011102230246251565404236316680908203126",
+                "7.2057594037927933e16", "123456789012345678", "1234567890123456789", "1e-400", "1e400",
+                "0.1234567812345678", "99999999.99999999"
+        };
+        Bytes b = Bytes.allocateElasticDirect();
+        for (String text : texts) {
+            b.clear();
+            b.append8bit(text).writeByte((byte) ' ');
+            Assert.assertEquals(text, Double.parseDouble(text), BytesInternal.parseDouble(b), 0.0);
+            Assert.assertEquals(text, 0, b.readRemaining());
+        }
+        b.release();
+    }
+
+    @Test
+    public void testParseDoubleRandom() {
+        Random rand = new Random(1);
+        Bytes b = Bytes.allocateElasticDirect();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            double d = Double.longBitsToDouble(rand.nextLong());
+            if (Double.isNaN(d))
+                continue;
+            // Double.toString uses an exponent, append doesn't
+            for (String text : new String[]{Double.toString(d), "" + rand.nextInt(1000) + '.' + rand.nextInt(100000)}) {
+                b.clear();
+                b.append8bit(text).writeByte((byte) ',');
+                Assert.assertEquals(text, Double.parseDouble(text), BytesInternal.parseDouble(b), 0.0);
+            }
+            b.clear();
+            b.append(d).writeByte((byte) ',');
+            Assert.assertEquals(d, BytesInternal.parseDouble(b), 0.0);
+
+            // random digits with more than 19 significant digits
+            sb.setLength(0);
+            int len = 1 + rand.nextInt(30);
+            for (int j = 0; j < len; j++)
+                sb.append((char) ('0' + rand.nextInt(10)));
+            sb.insert(rand.nextInt(len + 1), '.').append('e').append(rand.nextInt(640) - 330);
+            if (sb.charAt(0) == '.' && sb.charAt(1) == 'e')
+                continue;
+            String text = sb.toString();
+            b.clear();
+            b.append8bit(text).writeByte((byte) ' ');
+            Assert.assertEquals(text, Double.parseDouble(text), BytesInternal.parseDouble(b), 0.0);
+        }
+        b.release();
+    }
+
+    @Test
+    @Ignore("Long running, compares with Double.parseDouble")
+    public void testParseDoublePerformance() {
+        Random rand = new Random(2);
+        Bytes b = Bytes.allocateElasticDirect();
+        String[] texts = new String[1024];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = Double.toString(Math.round(Math.pow(1e8, rand.nextDouble()) * 1e4) / 1e4);
+            b.append8bit(texts[i]).writeByte((byte) ' ');
+        }
+        for (int t = 0; t < 5; t++) {
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int j = 0; j < 1000; j++) {
+                b.readPosition(0);
+                for (int i = 0; i < texts.length; i++)
+                    sum += BytesInternal.parseDouble(b);
+            }
+            long mid = System.nanoTime();
+            for (int j = 0; j < 1000; j++)
+                for (String text : texts)
+                    sum -= Double.parseDouble(text);
+            long end = System.nanoTime();
+            System.out.printf("parseDouble %.1f ns, Double.parseDouble %.1f ns, %s%n",
+                    (mid - start) / 1024e3, (end - mid) / 1024e3, sum);
+        }
+        b.release();
+    }
+}
@@ -43,4 +43,52 @@ public class BytesInternalTest {
         assertFalse(BytesInternal.compareUTF(bs, 1, "£"));
         assertFalse(BytesInternal.compareUTF(bs, 1, "£€$"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseUTFMixed() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        String[] texts = {"", "a", "hello world", "0123456789abcdefghij", "£", "café crème",
+                "abcdefgh€ijklmnop£qrstuvwxyz", "€€€€€€€€€", "0123456789abcdef\u0123"};
+        for (String text : texts) {
+            // vary the alignment of the text.
+            for (int start = 0; start < 8; start++) {
+                String s = "01234567".substring(start) + text;
+                bytes.clear();
+                bytes.writeUtf8(s);
+                assertEquals(s, bytes.readUtf8());
+
+                StringBuilder sb = new StringBuilder();
+                bytes.readUtf8(0, sb);
+                assertEquals(s, sb.toString());
+            }
+        }
+        bytes.release();
+    }
+
+    @Test
+    public void testAppendUtf8Grows() {
+        String s = "abcdefghij£€klmnopqrstuvwxyz€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€€";
+        Bytes bytes = Bytes.allocateElasticDirect(16);
+        bytes.appendUtf8(s);
+        assertEquals(BytesInternal.findUTFLength(s), bytes.readRemaining());
+        assertEquals(s, bytes.parseUtf8(StopCharTesters.ALL));
+
+        bytes.clear();
+        bytes.appendUtf8(s, 10, 20);
+        assertEquals(s.substring(10, 30), bytes.parseUtf8(StopCharTesters.ALL));
+        bytes.release();
+    }
+
+    @Test(expected = UTFDataFormatRuntimeException.class)
+    public void testParseUTFFourByteSequence() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        try {
+            // U+1F600 is a 4-byte sequence which isn't supported.
+            bytes.write(new byte[]{'a', 'b', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80});
+            StringBuilder sb = new StringBuilder();
+            BytesInternal.parseUTF(bytes, sb, 6);
+        } finally {
+            bytes.release();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleToDecimalTest {
+    private final Bytes bytes = Bytes.allocateElasticDirect();
+
+    @After
+    public void release() {
+        bytes.release();
+    }
+
+    @Test
+    public void testExamples() {
+        assertEquals("0.0", append(0.0));
+        assertEquals("-0.0", append(-0.0));
+        assertEquals("1.0", append(1.0));
+        assertEquals("-1.5", append(-1.5));
+        assertEquals("0.1", append(0.1));
+        assertEquals("0.3", append(0.3));
+        assertEquals("0.30000000000000004", append(0.1 + 0.2));
+        assertEquals("123.1234", append(123.1234));
+        assertEquals("0.001", append(1e-3));
+        assertEquals("10000000", append(1e7).replace(".0", ""));
+        assertEquals("100000000000000000000000", append(1e23));
+        assertTrue(append(Double.MAX_VALUE).matches("179769313486231570{292}"));
+        assertEquals("Infinity", append(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", append(Double.NEGATIVE_INFINITY));
+        assertEquals("NaN", append(Double.NaN));
+        assertEquals("0.1", append(0.1f));
+        assertEquals("16777216.0", append(16777216f));
+        assertTrue(append(Float.MAX_VALUE).matches("340282350{31}"));
+    }
+
+    @Test
+    public void testSubnormals() {
+        String min = append(Double.MIN_VALUE);
+        assertEquals("0.", min.substring(0, 2));
+        assertTrue(min, min.endsWith("049"));
+        assertEquals(Double.MIN_VALUE, Double.parseDouble(min), 0.0);
+        assertEquals(Float.MIN_VALUE, Float.parseFloat(append(Float.MIN_VALUE)), 0.0f);
+        assertEquals(Double.MIN_NORMAL, Double.parseDouble(append(Double.MIN_NORMAL)), 0.0);
+    }
+
+    @Test
+    public void testRandomDoubles() {
+        Random rand = new Random(1);
+        for (int i = 0; i < 500_000; i++) {
+            double d = Double.longBitsToDouble(rand.nextLong());
+            if (Double.isNaN(d))
+                continue;
+            checkShortest(d);
+            checkShortest(Math.pow(1e12, rand.nextDouble()) / 1e6);
+        }
+    }
+
+    @Test
+    public void testRandomFloats() {
+        Random rand = new Random(2);
+        for (int i = 0; i < 500_000; i++) {
+            float f = Float.intBitsToFloat(rand.nextInt());
+            if (Float.isNaN(f))
+                continue;
+            String s = append(f);
+            assertEquals(s, f, Float.parseFloat(s), 0.0f);
+            assertTrue(s, significantDigits(s) <= significantDigits(Float.toString(f)));
+        }
+    }
+
+    @Test
+    public void testFixedDecimalPlaces() {
+        assertEquals("1.23", append(1.2345, 2));
+        assertEquals("1.24", append(1.2351, 2));
+        assertEquals("-1.20", append(-1.2, 2));
+        assertEquals("0.05", append(0.05, 2));
+        assertEquals("0.00", append(-0.001, 2));
+        assertEquals("100", append(99.5, 0));
+        assertEquals("12345.678900", append(12345.6789, 6));
+        assertEquals("NaN", append(Double.NaN, 4));
+        assertEquals("100000000000000000000000", append(1e23, 2));
+    }
+
+    @Test
+    public void testFixedDecimalPlacesRounding() {
+        // ties are rounded away from zero, whatever the sign.
+        assertEquals("3", append(2.5, 0));
+        assertEquals("-3", append(-2.5, 0));
+        assertEquals("-1", append(-0.5, 0));
+        assertEquals("0.13", append(0.125, 2));
+        assertEquals("-0.13", append(-0.125, 2));
+        // the decimal is rounded rather than the double, which is a little less.
+        assertEquals("2.68", append(2.675, 2));
+        assertEquals("-2.68", append(-2.675, 2));
+        assertEquals("1.01", append(1.005, 2));
+        assertEquals("1.1", append(1.05, 1));
+        assertEquals("0.0", append(-0.04, 1));
+        assertEquals("0.000", append(Double.MIN_VALUE, 3));
+
+        Random rand = new Random(4);
+        for (int i = 0; i < 100_000; i++) {
+            double d = Math.round(Math.pow(1e10, rand.nextDouble()) * 1e3) / (rand.nextBoolean() ? 1e3 : -1e3);
+            int decimalPlaces = rand.nextInt(6);
+            String expected = new BigDecimal(append(d)).setScale(decimalPlaces, RoundingMode.HALF_UP).toPlainString();
+            if (expected.matches("-[0.]*"))
+                expected = expected.substring(1);
+            assertEquals(expected, append(d, decimalPlaces));
+        }
+    }
+
+    private void checkShortest(double d) {
+        String s = append(d);
+        assertEquals(s, d, Double.parseDouble(s), 0.0);
+        // Double.toString isn't always the shortest, but should never be shorter.
+        assertTrue(s, significantDigits(s) <= significantDigits(Double.toString(d)));
+        // it must also be as close as possible for its length
+        MathContext mc = new MathContext(significantDigits(s), RoundingMode.HALF_EVEN);
+        assertEquals(s, new BigDecimal(s).round(mc), new BigDecimal(d).round(mc));
+    }
+
+    private static int significantDigits(String s) {
+        String mantissa = s.replaceFirst("[eE].*", "").replace("-", "").replace(".", "");
+        mantissa = mantissa.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return Math.max(1, mantissa.length());
+    }
+
+    private String append(double d) {
+        bytes.clear();
+        bytes.append(d);
+        return bytes.toString();
+    }
+
+    private String append(float f) {
+        bytes.clear();
+        bytes.append(f);
+        return bytes.toString();
+    }
+
+    private String append(double d, int decimalPlaces) {
+        bytes.clear();
+        bytes.append(d, decimalPlaces);
+        return bytes.toString();
+    }
+
+    @Test
+    @Ignore("Long running, compares with Double.toString")
+    public void testPerformance() {
+        Random rand = new Random(3);
+        double[] values = new double[1024];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Math.round(Math.pow(1e8, rand.nextDouble()) * 1e4) / 1e4;
+        for (int t = 0; t < 5; t++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < 1000; j++)
+                for (double value : values) {
+                    bytes.clear();
+                    bytes.append(value);
+                }
+            long mid = System.nanoTime();
+            for (int j = 0; j < 1000; j++)
+                for (double value : values) {
+                    bytes.clear();
+                    bytes.append8bit(Double.toString(value));
+                }
+            long end = System.nanoTime();
+            System.out.printf("append(double) %.1f ns, Double.toString %.1f ns%n",
+                    (mid - start) / 1024e3, (end - mid) / 1024e3);
+        }
+    }
+}
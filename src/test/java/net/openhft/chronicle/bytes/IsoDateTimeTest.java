@@ -0,0 +1,95 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IsoDateTimeTest {
+    @Test
+    public void testAppend() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        bytes.appendDateTimeNanos(0).append8bit(" ")
+                .appendDateTimeNanos(1456835696_123456789L).append8bit(" ")
+                .appendDateTimeNanos(-1);
+        assertEquals("1970-01-01T00:00:00.000000000Z 2016-03-01T12:34:56.123456789Z 1969-12-31T23:59:59.999999999Z",
+                bytes.toString());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        Random rand = new Random(1);
+        for (Bytes bytes : new Bytes[]{Bytes.allocateElasticDirect(), Bytes.wrapForWrite(ByteBuffer.allocate(64))}) {
+            for (int i = 0; i < 100000; i++) {
+                long nanos = rand.nextLong();
+                bytes.clear();
+                bytes.appendDateTimeNanos(nanos);
+                String text = bytes.toString();
+                assertEquals(text, format.format(new Date(Math.floorDiv(nanos, 1_000_000))), text.substring(0, 23));
+                assertEquals(text, nanos, bytes.parseDateTimeNanos());
+                assertEquals(0, bytes.readRemaining());
+            }
+        }
+    }
+
+    @Test
+    public void testParseFractions() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        bytes.append8bit("2016-03-01T12:34:56Z,2016-03-01T12:34:56.1Z,2016-03-01T12:34:56.12345678Z,"
+                + "2016-03-01T12:34:56.1234567891Z,2000-02-29T00:00:00.000000001Z");
+        long second = 1456835696_000000000L;
+        assertEquals(second, bytes.parseDateTimeNanos());
+        bytes.readSkip(1);
+        assertEquals(second + 100000000, bytes.parseDateTimeNanos());
+        bytes.readSkip(1);
+        assertEquals(second + 123456780, bytes.parseDateTimeNanos());
+        bytes.readSkip(1);
+        assertEquals(second + 123456789, bytes.parseDateTimeNanos());
+        bytes.readSkip(1);
+        assertEquals(951782400_000000001L, bytes.parseDateTimeNanos());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        for (String text : new String[]{"2016-03-01 12:34:56Z", "2016-13-01T12:34:56Z", "2015-02-29T12:34:56Z",
+                "2016-03-01T24:00:00Z", "2016-03-01T12:34:5xZ", "2016-03-01T12:34:56.123", "2016/03/01T12:34:56Z"}) {
+            Bytes bytes = Bytes.from(text + "            ");
+            try {
+                bytes.parseDateTimeNanos();
+                fail(text);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testAppendDateMillis() {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        bytes.appendDateMillis(1456835696_123L).append8bit(" ").appendDateMillis(-1);
+        assertEquals("20160301 19691231", bytes.toString());
+    }
+}
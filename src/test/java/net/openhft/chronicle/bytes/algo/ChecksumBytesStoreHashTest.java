@@ -0,0 +1,141 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.core.OS;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChecksumBytesStoreHashTest {
+    @Test
+    public void testCRC32C() {
+        assertEquals(0L, CRC32CBytesStoreHash.INSTANCE.applyAsLong(Bytes.from("")));
+        assertEquals(0xE3069283L, CRC32CBytesStoreHash.INSTANCE.applyAsLong(Bytes.from("123456789")));
+        Bytes direct = Bytes.allocateElasticDirect();
+        direct.append8bit("123456789");
+        assertEquals(0xE3069283L, CRC32CBytesStoreHash.INSTANCE.applyAsLong(direct));
+
+        // in pieces
+        int crc = CRC32CBytesStoreHash.update(0, direct, 0, 4);
+        crc = CRC32CBytesStoreHash.update(crc, direct, 4, 5);
+        assertEquals(0xE3069283, crc);
+    }
+
+    @Test
+    public void testXxHash64() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64BytesStoreHash.INSTANCE.applyAsLong(Bytes.from("")));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64BytesStoreHash.INSTANCE.applyAsLong(Bytes.from("abc")));
+        String text = "Nobody inspects the spammish repetition";
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64BytesStoreHash.INSTANCE.applyAsLong(Bytes.from(text)));
+        Bytes direct = Bytes.allocateElasticDirect();
+        direct.append8bit(text);
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64BytesStoreHash.INSTANCE.applyAsLong(direct));
+    }
+
+    @Test
+    public void testMappedBytesOverManyChunks() throws Exception {
+        File file = File.createTempFile("checksum", "chunks");
+        try {
+            Random rand = new Random(2);
+            Bytes mapped = MappedBytes.mappedBytes(file, OS.pageSize());
+            Bytes direct = Bytes.allocateElasticDirect();
+            for (int i = 0; i < 100_000; i++) {
+                byte b = (byte) rand.nextInt();
+                mapped.writeByte(b);
+                direct.writeByte(b);
+            }
+            long crc = CRC32CBytesStoreHash.INSTANCE.applyAsLong(direct);
+            long xxh = XxHash64BytesStoreHash.INSTANCE.applyAsLong(direct);
+
+            // the last chunk is current after writing.
+            assertEquals(crc, CRC32CBytesStoreHash.INSTANCE.applyAsLong(mapped));
+            assertEquals(xxh, XxHash64BytesStoreHash.INSTANCE.applyAsLong(mapped));
+
+            // then the first chunk.
+            mapped.readByte(0);
+            assertEquals(0, mapped.bytesStore().start());
+            assertEquals(crc, CRC32CBytesStoreHash.INSTANCE.applyAsLong(mapped));
+            assertEquals(xxh, XxHash64BytesStoreHash.INSTANCE.applyAsLong(mapped));
+
+            // within one chunk
+            mapped.readPosition(10).readLimit(1000);
+            direct.readPosition(10).readLimit(1000);
+            assertEquals(CRC32CBytesStoreHash.INSTANCE.applyAsLong(direct), CRC32CBytesStoreHash.INSTANCE.applyAsLong(mapped));
+            assertEquals(XxHash64BytesStoreHash.INSTANCE.applyAsLong(direct), XxHash64BytesStoreHash.INSTANCE.applyAsLong(mapped));
+            direct.release();
+            mapped.release();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNativeAndHeapMatch() {
+        Random rand = new Random(1);
+        Bytes direct = Bytes.allocateElasticDirect(256);
+        Bytes heap = Bytes.wrapForWrite(new byte[256]);
+        for (int len = 0; len <= 200; len++) {
+            direct.clear();
+            heap.clear();
+            for (int i = 0; i < len; i++) {
+                byte b = (byte) rand.nextInt();
+                direct.writeByte(b);
+                heap.writeByte(b);
+            }
+            direct.readSkip(len / 3);
+            heap.readSkip(len / 3);
+            assertEquals(CRC32CBytesStoreHash.INSTANCE.applyAsLong(heap),
+                    CRC32CBytesStoreHash.INSTANCE.applyAsLong(direct));
+            assertEquals(XxHash64BytesStoreHash.INSTANCE.applyAsLong(heap, len),
+                    XxHash64BytesStoreHash.INSTANCE.applyAsLong(direct, len));
+        }
+    }
+
+    @Test
+    @Ignore("Long running")
+    public void testThroughput() {
+        BytesStoreHash[] hashes = {VanillaBytesStoreHash.INSTANCE, OptimisedBytesStoreHash.INSTANCE,
+                CRC32CBytesStoreHash.INSTANCE, XxHash64BytesStoreHash.INSTANCE};
+        for (int size : new int[]{8, 64, 1024, 64 << 10}) {
+            Bytes bytes = Bytes.allocateElasticDirect(size);
+            for (int i = 0; i < size; i++)
+                bytes.writeByte((byte) i);
+            for (int t = 0; t < 3; t++) {
+                for (BytesStoreHash hash : hashes) {
+                    int runs = (64 << 20) / size;
+                    long sum = 0;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < runs; i++)
+                        sum += hash.applyAsLong((BytesStore) bytes);
+                    long time = System.nanoTime() - start;
+                    if (t == 2)
+                        System.out.printf("%s size: %,d took %.1f ns, %.2f GB/s %d%n",
+                                hash, size, (double) time / runs, (double) runs * size / time, sum & 1);
+                }
+            }
+            bytes.release();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OptimisedBytesStoreHash128Test {
+    @Test
+    public void testNativeAndHeapMatch() {
+        Random rand = new Random(1);
+        Bytes direct = Bytes.allocateElasticDirect(256);
+        Bytes heap = Bytes.wrapForWrite(new byte[256]);
+        long[] expected = new long[2];
+        long[] actual = new long[2];
+        NativeBytesStore<Void> out = NativeBytesStore.nativeStoreWithFixedCapacity(16);
+        for (int len = 0; len <= 200; len++) {
+            direct.clear();
+            heap.clear();
+            for (int i = 0; i < len; i++) {
+                byte b = (byte) rand.nextInt();
+                direct.writeByte(b);
+                heap.writeByte(b);
+            }
+            OptimisedBytesStoreHash128.INSTANCE.hash(direct, expected);
+            OptimisedBytesStoreHash128.INSTANCE.hash(heap, actual);
+            assertEquals("len: " + len, expected[0], actual[0]);
+            assertEquals("len: " + len, expected[1], actual[1]);
+
+            OptimisedBytesStoreHash128.INSTANCE.hash(direct, out, 0);
+            assertEquals(expected[0], out.readLong(0));
+            assertEquals(expected[1], out.readLong(8));
+        }
+        out.release();
+    }
+
+    @Test
+    public void testMappedBytesOverManyChunks() throws Exception {
+        File file = File.createTempFile("hash128", "chunks");
+        try {
+            Random rand = new Random(2);
+            Bytes mapped = MappedBytes.mappedBytes(file, OS.pageSize());
+            Bytes direct = Bytes.allocateElasticDirect();
+            for (int i = 0; i < 100_000; i++) {
+                byte b = (byte) rand.nextInt();
+                mapped.writeByte(b);
+                direct.writeByte(b);
+            }
+            long[] expected = new long[2];
+            long[] actual = new long[2];
+            OptimisedBytesStoreHash128.INSTANCE.hash(direct, expected);
+
+            // the last chunk is current after writing.
+            OptimisedBytesStoreHash128.INSTANCE.hash(mapped, actual);
+            assertEquals(expected[0], actual[0]);
+            assertEquals(expected[1], actual[1]);
+
+            // then the first chunk.
+            mapped.readByte(0);
+            assertEquals(0, mapped.bytesStore().start());
+            OptimisedBytesStoreHash128.INSTANCE.hash(mapped, actual);
+            assertEquals(expected[0], actual[0]);
+            assertEquals(expected[1], actual[1]);
+            direct.release();
+            mapped.release();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLengthMatters() {
+        long[] a = new long[2];
+        long[] b = new long[2];
+        OptimisedBytesStoreHash128.INSTANCE.hash(Bytes.from(""), a);
+        OptimisedBytesStoreHash128.INSTANCE.hash(Bytes.from("\0"), b);
+        assertNotEquals(a[0], b[0]);
+        assertNotEquals(a[1], b[1]);
+    }
+
+    @Test
+    public void testNoCollisions() {
+        Set<Long> lows = new HashSet<>();
+        Set<Long> highs = new HashSet<>();
+        Bytes bytes = Bytes.allocateElasticDirect(32);
+        long[] result = new long[2];
+        for (int i = 0; i < 100_000; i++) {
+            bytes.clear();
+            bytes.append8bit("key-").append(i);
+            OptimisedBytesStoreHash128.INSTANCE.hash(bytes, result);
+            assertTrue(lows.add(result[0]));
+            assertTrue(highs.add(result[1]));
+            assertNotEquals(result[0], result[1]);
+        }
+    }
+}
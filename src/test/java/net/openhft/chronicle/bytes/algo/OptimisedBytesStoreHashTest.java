@@ -23,6 +23,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Random;
 
@@ -50,6 +51,35 @@ public class OptimisedBytesStoreHashTest {
                 OptimisedBytesStoreHash.INSTANCE.applyAsLong(b));
     }
 
+    @Test
+    public void testHeapMatchesNative() {
+        Random rand = new Random(1);
+        for (int pos = 0; pos < 3; pos++) {
+            for (int len = 0; len <= 200; len++) {
+                Bytes direct = Bytes.allocateDirect(256);
+                Bytes array = Bytes.wrapForWrite(new byte[256]);
+                Bytes buffer = Bytes.wrapForWrite(ByteBuffer.allocate(256));
+                for (int i = 0; i < pos + len; i++) {
+                    byte b = (byte) rand.nextInt();
+                    direct.writeByte(b);
+                    array.writeByte(b);
+                    buffer.writeByte(b);
+                }
+                direct.readSkip(pos);
+                array.readSkip(pos);
+                buffer.readSkip(pos);
+                String msg = "pos: " + pos + ", len: " + len;
+                long expected = VanillaBytesStoreHash.INSTANCE.applyAsLong(direct);
+                assertEquals(msg, expected, OptimisedBytesStoreHash.INSTANCE.applyAsLong(direct));
+                assertEquals(msg, expected, VanillaBytesStoreHash.INSTANCE.applyAsLong(array));
+                assertEquals(msg, expected, OptimisedBytesStoreHash.INSTANCE.applyAsLong(array));
+                assertEquals(msg, expected, OptimisedBytesStoreHash.INSTANCE.applyAsLong(buffer));
+                assertEquals(msg, expected, BytesStoreHash.hash(array));
+                direct.release();
+            }
+        }
+    }
+
     @Test
     public void sizeMatch() {
         NativeBytes nb = Bytes.allocateElasticDirect(64);
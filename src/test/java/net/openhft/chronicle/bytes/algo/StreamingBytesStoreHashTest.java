@@ -0,0 +1,70 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.algo;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.NativeBytes;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingBytesStoreHashTest {
+    @Test
+    public void testSameAsVanilla() {
+        Random rand = new Random(1);
+        NativeBytes bytes = Bytes.allocateElasticDirect(256);
+        StreamingBytesStoreHash hasher = new StreamingBytesStoreHash();
+        for (int len = 0; len <= 200; len++) {
+            bytes.clear();
+            for (int i = 0; i < len; i++)
+                bytes.writeByte((byte) rand.nextInt());
+            long expected = VanillaBytesStoreHash.INSTANCE.applyAsLong(bytes);
+
+            assertEquals("len: " + len, expected, hasher.reset().update(bytes).finish());
+
+            // in random pieces
+            for (int t = 0; t < 10; t++) {
+                hasher.reset();
+                for (long pos = 0; pos < len; ) {
+                    long piece = Math.min(len - pos, rand.nextInt(40));
+                    hasher.update(bytes, pos, piece);
+                    pos += piece;
+                }
+                assertEquals(len, hasher.length());
+                assertEquals("len: " + len, expected, hasher.finish());
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateLong() {
+        Bytes bytes = Bytes.allocateElasticDirect(64);
+        StreamingBytesStoreHash hasher = new StreamingBytesStoreHash();
+        for (int i = 0; i < 8; i++) {
+            long l = 0x0102030405060708L * (i + 1);
+            bytes.writeLong(l);
+            hasher.update(l);
+            assertEquals(VanillaBytesStoreHash.INSTANCE.applyAsLong(bytes), hasher.finish());
+            // misaligned after a single byte
+            bytes.writeByte((byte) i);
+            hasher.update(bytes, bytes.writePosition() - 1, 1);
+            assertEquals(VanillaBytesStoreHash.INSTANCE.applyAsLong(bytes), hasher.finish());
+        }
+    }
+}
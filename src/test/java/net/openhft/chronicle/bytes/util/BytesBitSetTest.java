@@ -0,0 +1,150 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BytesBitSetTest {
+    @Test
+    public void testSetClear() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBitSet.sizeFor(200));
+        BytesBitSet bits = new BytesBitSet(store, 0, 200);
+        assertTrue(bits.set(3));
+        assertFalse(bits.set(3));
+        assertTrue(bits.set(64));
+        assertTrue(bits.set(199));
+        assertTrue(bits.get(64));
+        assertFalse(bits.get(65));
+        assertEquals(3, bits.cardinality());
+        assertEquals(3, bits.nextSetBit(0));
+        assertEquals(64, bits.nextSetBit(4));
+        assertEquals(199, bits.nextSetBit(65));
+        assertEquals(-1, bits.nextSetBit(200));
+        assertEquals(0, bits.nextClearBit(0));
+        assertEquals(4, bits.nextClearBit(3));
+        assertTrue(bits.clear(64));
+        assertFalse(bits.clear(64));
+        assertEquals(199, bits.nextSetBit(4));
+        bits.clear();
+        assertEquals(0, bits.cardinality());
+        assertEquals(-1, bits.nextSetBit(0));
+        store.release();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBitSet.sizeFor(100));
+        try {
+            new BytesBitSet(store, 0, 100).set(100);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testBulkMatchesBitSet() {
+        Random random = new Random(1);
+        int size = 1000;
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBitSet.sizeFor(size) * 2);
+        BytesBitSet a = new BytesBitSet(store, 0, size);
+        BytesBitSet b = new BytesBitSet(store, BytesBitSet.sizeFor(size), size);
+        BitSet ja = new BitSet(), jb = new BitSet();
+        for (int i = 0; i < 400; i++) {
+            int x = random.nextInt(size), y = random.nextInt(size);
+            a.set(x);
+            ja.set(x);
+            b.set(y);
+            jb.set(y);
+        }
+        for (String op : new String[]{"or", "andNot", "and"}) {
+            switch (op) {
+                case "or":
+                    a.or(b);
+                    ja.or(jb);
+                    break;
+                case "andNot":
+                    a.andNot(b);
+                    ja.andNot(jb);
+                    break;
+                default:
+                    b.set(0);
+                    jb.set(0);
+                    a.set(0);
+                    ja.set(0);
+                    a.and(b);
+                    ja.and(jb);
+            }
+            assertEquals(op, ja.cardinality(), a.cardinality());
+            for (long i = a.nextSetBit(0), j = ja.nextSetBit(0); ; i = a.nextSetBit(i + 1), j = ja.nextSetBit((int) j + 1)) {
+                assertEquals(op, j, i);
+                if (i < 0)
+                    break;
+            }
+        }
+        store.release();
+    }
+
+    @Test
+    public void testConcurrentSet() throws InterruptedException {
+        int size = 100_000;
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBitSet.sizeFor(size));
+        BytesBitSet bits = new BytesBitSet(store, 0, size);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int start = t;
+            threads[t] = new Thread(() -> {
+                // interleaved so the threads update the same words.
+                for (int i = start; i < size; i += threads.length)
+                    assertTrue(bits.set(i));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(size, bits.cardinality());
+        assertEquals(-1, bits.nextClearBit(0));
+        store.release();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testBitSet-" + System.nanoTime() + ".dat");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store = mf.acquireByteStore(0);
+        new BytesBitSet(store, 0, 1 << 16).set(12345);
+        store.release();
+        mf.close();
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store2 = mf2.acquireByteStore(0);
+        assertEquals(12345, new BytesBitSet(store2, 0, 1 << 16).nextSetBit(0));
+        store2.release();
+        mf2.close();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class BytesBloomFilterTest {
+    @Test
+    public void testSizing() {
+        long bits = BytesBloomFilter.optimalBits(100_000, 0.01);
+        // about 9.6 bits per entry, rounded up to a power of 2
+        assertEquals(1 << 20, bits);
+        assertEquals(7, BytesBloomFilter.optimalHashes(100_000, 958_506));
+        assertEquals(64 + (1 << 17), BytesBloomFilter.sizeFor(bits));
+    }
+
+    @Test
+    public void testFalsePositives() {
+        for (boolean blocked : new boolean[]{false, true}) {
+            int entries = 100_000;
+            long bits = BytesBloomFilter.optimalBits(entries, 0.01);
+            NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBloomFilter.sizeFor(bits));
+            BytesBloomFilter filter = new BytesBloomFilter(store, BytesBloomFilter.optimalHashes(entries, bits), blocked);
+            assertEquals(bits, filter.size());
+            Bytes key = Bytes.allocateElasticDirect();
+            int added = 0;
+            for (int i = 0; i < entries; i++) {
+                key.clear();
+                key.append8bit("key-").append(i);
+                if (filter.add(key))
+                    added++;
+            }
+            // a new key can look like it was added already
+            assertTrue(blocked + " " + added, added > entries * 0.995);
+            for (int i = 0; i < entries; i++) {
+                key.clear();
+                key.append8bit("key-").append(i);
+                assertTrue(filter.mightContain(key));
+                assertFalse(filter.add(key));
+            }
+            int falsePositives = 0;
+            for (int i = 0; i < entries; i++) {
+                key.clear();
+                key.append8bit("other-").append(i);
+                if (filter.mightContain(key))
+                    falsePositives++;
+            }
+            // about 0.65% in theory, a little more when blocked.
+            assertTrue(blocked + " " + falsePositives, falsePositives < (blocked ? entries / 50 : entries / 100));
+            filter.clear();
+            assertEquals(0.0, filter.fill(), 0.0);
+            assertFalse(filter.mightContain(key));
+            store.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentLayout() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBloomFilter.sizeFor(4096));
+        try {
+            new BytesBloomFilter(store, 3, false);
+            new BytesBloomFilter(store, 4, false);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesBloomFilter.sizeFor(1 << 20));
+        BytesBloomFilter filter = new BytesBloomFilter(store, 7, true);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int start = t;
+            threads[t] = new Thread(() -> {
+                for (long i = start; i < 100_000; i += threads.length)
+                    filter.addHash(i * 0x9E3779B97F4A7C15L);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        for (long i = 0; i < 100_000; i++)
+            assertTrue(filter.mightContainHash(i * 0x9E3779B97F4A7C15L));
+        store.release();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testBloomFilter-" + System.nanoTime() + ".dat");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store = mf.acquireByteStore(0);
+        new BytesBloomFilter(store, 5, true).add(Bytes.from("hello"));
+        store.release();
+        mf.close();
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store2 = mf2.acquireByteStore(0);
+        BytesBloomFilter filter = new BytesBloomFilter(store2, 5, true);
+        assertTrue(filter.mightContain(Bytes.from("hello")));
+        assertFalse(filter.mightContain(Bytes.from("world")));
+        store2.release();
+        mf2.close();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BytesRingBufferTest {
+    @Test
+    public void testBatch() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(128));
+        BytesRingBuffer ring = new BytesRingBuffer(store);
+        assertEquals(128, ring.capacity());
+        List<String> read = new ArrayList<>();
+        assertTrue(ring.write(Bytes.from("hello")));
+        assertTrue(ring.write(Bytes.from("world")));
+        // not published yet.
+        assertEquals(0, ring.read(b -> read.add(b.toString()), 10));
+        ring.publish();
+        assertEquals(2, ring.read(b -> read.add(b.toString()), 10));
+        assertEquals("[hello, world]", read.toString());
+        assertEquals(0, ring.used());
+
+        // 16 messages of 8 bytes fill it up.
+        for (int i = 0; i < 16; i++)
+            assertTrue(ring.offer(Bytes.from(String.format("m%03d", i))));
+        assertFalse(ring.offer(Bytes.from("m016")));
+        read.clear();
+        assertEquals(3, ring.read(b -> read.add(b.toString()), 3));
+        assertEquals("[m000, m001, m002]", read.toString());
+        assertTrue(ring.offer(Bytes.from("m016")));
+        read.clear();
+        assertEquals(14, ring.read(b -> read.add(b.toString()), 100));
+        assertEquals("m016", read.get(13));
+
+        // a message which doesn't fit before the end goes at the start.
+        String large = "0123456789012345678901234567890123456789012345678901234567";
+        assertTrue(ring.offer(Bytes.from(large + "-1")));
+        assertFalse(ring.offer(Bytes.from(large + "-2")));
+        read.clear();
+        assertEquals(1, ring.read(b -> read.add(b.toString()), 100));
+        assertTrue(ring.offer(Bytes.from(large + "-2")));
+        assertEquals(1, ring.read(b -> read.add(b.toString()), 100));
+        assertEquals("[" + large + "-1, " + large + "-2]", read.toString());
+        ring.close();
+        store.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(64));
+        try {
+            new BytesRingBuffer(store).offer(Bytes.from(new String(new char[61])));
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(1024));
+        BytesRingBuffer producer = new BytesRingBuffer(store);
+        BytesRingBuffer consumer = new BytesRingBuffer(store);
+        int messages = 200_000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                Bytes bytes = Bytes.allocateElasticDirect();
+                for (int i = 0; i < messages; i++) {
+                    bytes.clear();
+                    // variable lengths
+                    for (int j = 0; j <= i % 13; j++)
+                        bytes.writeInt(i);
+                    while (!producer.write(bytes))
+                        Thread.yield();
+                    if (i % 8 == 7)
+                        producer.publish();
+                }
+                producer.publish();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        thread.start();
+        long[] expected = {0};
+        while (expected[0] < messages && error.get() == null) {
+            consumer.read(b -> {
+                int i = (int) expected[0]++;
+                assertEquals(4 * (i % 13 + 1), b.readRemaining());
+                while (b.readRemaining() > 0)
+                    assertEquals(i, b.readInt());
+            }, 16);
+        }
+        thread.join();
+        assertNull(error.get());
+        assertEquals(0, consumer.used());
+        producer.close();
+        consumer.close();
+        store.release();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testRingBuffer-" + System.nanoTime() + ".ring");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store = mf.acquireByteStore(0);
+        BytesRingBuffer ring = new BytesRingBuffer(store);
+        for (int i = 0; i < 10; i++)
+            assertTrue(ring.offer(Bytes.from("msg" + i)));
+        ring.close();
+        store.release();
+        mf.close();
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store2 = mf2.acquireByteStore(0);
+        BytesRingBuffer ring2 = new BytesRingBuffer(store2);
+        List<String> read = new ArrayList<>();
+        assertEquals(10, ring2.read(b -> read.add(b.toString()), 100));
+        assertEquals("msg9", read.get(9));
+        ring2.close();
+        store2.release();
+        mf2.close();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.algo.BytesStoreHash;
+import net.openhft.chronicle.core.util.StringUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BytesStoreInternerTest {
+    @Test
+    public void testIntern() {
+        BytesStoreInterner interner = new BytesStoreInterner(16);
+        List<InternedBytesStore> symbols = new ArrayList<>();
+        Bytes bytes = Bytes.allocateElasticDirect();
+        for (int i = 0; i < 1000; i++) {
+            bytes.clear();
+            bytes.append8bit("SYM").append(i);
+            InternedBytesStore ibs = interner.intern(bytes);
+            assertEquals(0, bytes.readPosition());
+            assertEquals("SYM" + i, ibs.toString());
+            assertEquals(BytesStoreHash.hash(bytes), ibs.hash());
+            symbols.add(ibs);
+        }
+        assertEquals(1000, interner.size());
+
+        for (int i = 0; i < 1000; i++) {
+            // the same contents from the heap give the same instance.
+            Bytes heap = Bytes.from("SYM" + i);
+            assertSame(symbols.get(i), interner.intern(heap));
+            assertSame(symbols.get(i), interner.intern(symbols.get(i)));
+        }
+        assertEquals(1000, interner.size());
+
+        InternedBytesStore empty = interner.intern(Bytes.from(""));
+        assertEquals(0, empty.readRemaining());
+        assertSame(empty, interner.intern(Bytes.allocateElasticDirect()));
+        interner.close();
+    }
+
+    @Test
+    public void testLargeSymbol() {
+        BytesStoreInterner interner = new BytesStoreInterner(16);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+            sb.append((char) ('a' + i % 26));
+        InternedBytesStore ibs = interner.intern(Bytes.from(sb.toString()));
+        assertEquals(sb.length(), ibs.readRemaining());
+        assertTrue(StringUtils.isEqual(sb, ibs));
+        assertSame(ibs, interner.intern(Bytes.from(sb.toString())));
+        interner.close();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        BytesStoreInterner interner = new BytesStoreInterner(16);
+        try {
+            interner.intern(Bytes.from("hello")).writeByte(0, (byte) 'H');
+        } finally {
+            interner.close();
+        }
+    }
+
+    @Test
+    public void testNoWritableBytes() throws Exception {
+        BytesStoreInterner interner = new BytesStoreInterner(16);
+        InternedBytesStore ibs = interner.intern(Bytes.from("hello"));
+        try {
+            ibs.bytesForWrite().append("world");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            ibs.appendUtf8(0, "world".toCharArray(), 0, 5);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            ibs.appendAscii(0, "world".toCharArray(), 0, 5);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        Bytes bytes = ibs.bytesForRead();
+        assertEquals("hello", bytes.toString());
+        // a failed write can still move the write position, so start again each time.
+        for (String text : new String[]{"world", "w\u00F6rl"}) {
+            try {
+                bytes.clear();
+                bytes.append(text);
+                fail();
+            } catch (RuntimeException e) {
+                assertNotWritable(e);
+            }
+            try {
+                bytes.clear();
+                bytes.append8bit(text);
+                fail();
+            } catch (RuntimeException e) {
+                assertNotWritable(e);
+            }
+            try {
+                bytes.clear();
+                bytes.appendUtf8(text);
+                fail();
+            } catch (RuntimeException e) {
+                assertNotWritable(e);
+            }
+        }
+        assertEquals("hello", ibs.toString());
+        interner.close();
+    }
+
+    // append(CharSequence) reports what it caught as an IndexOutOfBoundsException.
+    private static void assertNotWritable(RuntimeException e) {
+        String message = e instanceof IndexOutOfBoundsException ? e.getMessage() : e.getClass().getName();
+        if (!message.contains(UnsupportedOperationException.class.getName()))
+            throw e;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        BytesStoreInterner interner = new BytesStoreInterner(16);
+        interner.close();
+        interner.intern(Bytes.from("hello"));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.bytes.StopCharTester;
+import net.openhft.chronicle.bytes.StopCharTesters;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledStopCharTesterTest {
+    static final String[] TEXTS = {
+            "",
+            "a",
+            "hello world",
+            "hello,world\tand some \"quoted\" 'text' here",
+            "a very long token without any terminators at all 0123456789",
+            "0123456,\n",
+            "café crème, naïve \"€100\" 'x'",
+            "\u0000abcdefghijklmnop"
+    };
+
+    @Test
+    public void sameAsTester() {
+        for (StopCharTesters tester : StopCharTesters.values()) {
+            StopCharTester compiled = tester.compiled();
+            assertSame(compiled, tester.compiled());
+            for (int ch = -1; ch <= 300; ch++)
+                assertEquals(tester + " " + ch, tester.isStopChar(ch), compiled.isStopChar(ch));
+        }
+    }
+
+    @Test
+    public void parseSameAsTester() {
+        for (StopCharTesters tester : StopCharTesters.values()) {
+            // a lambda isn't compiled so it takes the byte by byte path.
+            StopCharTester uncompiled = tester::isStopChar;
+            for (String text : TEXTS) {
+                // offset the text to test the word at a time scan at each alignment
+                for (int start = 0; start < 8; start++) {
+                    String input = "________".substring(start) + text;
+                    assertEquals(tester + " " + input, parseUtf8(input, uncompiled), parseUtf8(input, tester));
+                    assertEquals(tester + " " + input, parse8bit(input, uncompiled), parse8bit(input, tester.compiled()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parseAcrossMappedChunks() throws Exception {
+        File file = File.createTempFile("compiled", "stop");
+        try {
+            // a token longer than a chunk and its overlap, so the scan can't see it all at once.
+            char[] chars = new char[OS.pageSize() * 5 + 3];
+            Arrays.fill(chars, 'a');
+            String token = new String(chars);
+            Bytes bytes = MappedBytes.mappedBytes(file, OS.pageSize());
+            bytes.append8bit(token).append8bit(",").append8bit(token);
+
+            StringBuilder sb = new StringBuilder();
+            bytes.parse8bit(sb, StopCharTesters.COMMA_STOP);
+            assertEquals(token, sb.toString());
+            bytes.parse8bit(sb, StopCharTesters.COMMA_STOP);
+            assertEquals(token, sb.toString());
+            assertEquals(0, bytes.readRemaining());
+
+            Bytes bytes2 = Bytes.allocateElasticDirect();
+            bytes.readPosition(0);
+            bytes.parse8bit(bytes2, StopCharTesters.COMMA_STOP);
+            assertEquals(',', bytes.readUnsignedByte(bytes.readPosition()));
+            // toString() would truncate it
+            bytes2.parse8bit(sb, StopCharTesters.COMMA_STOP);
+            assertEquals(token, sb.toString());
+            bytes2.release();
+            bytes.release();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String parseUtf8(String input, StopCharTester tester) {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        try {
+            bytes.appendUtf8(input);
+            StringBuilder sb = new StringBuilder();
+            StringBuilder result = new StringBuilder();
+            try {
+                while (bytes.readRemaining() > 0) {
+                    bytes.parseUtf8(sb, tester);
+                    result.append(sb).append('|');
+                }
+            } catch (RuntimeException e) {
+                // any failure should be the same either way.
+                result.append(e.getCause());
+            }
+            return result.toString();
+        } finally {
+            bytes.release();
+        }
+    }
+
+    private static String parse8bit(String input, StopCharTester tester) {
+        Bytes bytes = Bytes.allocateElasticDirect();
+        Bytes bytes2 = Bytes.allocateElasticDirect();
+        try {
+            bytes.append8bit(input);
+            StringBuilder sb = new StringBuilder();
+            bytes.parse8bit(sb, tester);
+            String result = sb + "|" + bytes.readRemaining();
+
+            // parsing into Bytes stops at, but doesn't consume the stop char.
+            bytes.readPosition(0);
+            bytes.parse8bit(bytes2, tester);
+            assertEquals(sb.toString(), bytes2.toString());
+            if (bytes.readRemaining() > 0)
+                assertTrue(tester.isStopChar(bytes.readUnsignedByte(bytes.readPosition())));
+            return result;
+        } finally {
+            bytes.release();
+            bytes2.release();
+        }
+    }
+}
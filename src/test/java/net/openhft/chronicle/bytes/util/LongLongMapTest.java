@@ -0,0 +1,122 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LongLongMapTest {
+    @Test
+    public void testRandomAgainstHashMap() {
+        LongLongMap map = new LongLongMap(16);
+        LongIntMap intMap = new LongIntMap(16);
+        Map<Long, Long> expected = new HashMap<>();
+        Random rand = new Random(1);
+        long[] keys = {0, Long.MIN_VALUE, Long.MAX_VALUE, -1, 1};
+        for (int i = 0; i < 200_000; i++) {
+            long key = rand.nextInt(20) == 0 ? keys[rand.nextInt(keys.length)] : rand.nextInt(2000) * 1000L;
+            switch (rand.nextInt(3)) {
+                case 0:
+                    boolean removed = expected.remove(key) != null;
+                    assertEquals(removed, map.remove(key));
+                    assertEquals(removed, intMap.remove(key));
+                    break;
+                case 1:
+                    long value = rand.nextLong();
+                    boolean replaced = expected.put(key, value) != null;
+                    assertEquals(replaced, map.put(key, value));
+                    assertEquals(replaced, intMap.put(key, (int) value));
+                    break;
+                default:
+                    Long v = expected.get(key);
+                    assertEquals(v == null ? -1 : v, map.get(key, -1));
+                    assertEquals(v == null ? -1 : (int) (long) v, intMap.get(key, -1));
+                    assertEquals(v != null, map.containsKey(key));
+                    break;
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), intMap.size());
+        // removals are rehashed away rather than growing the table.
+        assertTrue(map.capacity() <= 8192);
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0));
+        map.close();
+        intMap.close();
+    }
+
+    @Test
+    public void testSet() {
+        LongSet set = new LongSet(4);
+        for (long i = -100; i < 100; i++)
+            assertTrue(set.add(i * 31));
+        assertFalse(set.add(0));
+        assertEquals(200, set.size());
+        assertTrue(set.contains(-31));
+        assertTrue(set.remove(-31));
+        assertFalse(set.contains(-31));
+        assertFalse(set.contains(1));
+        set.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        LongLongMap map = new LongLongMap(16);
+        map.close();
+        map.get(1, 0);
+    }
+
+    @Test
+    public void testConcurrentReader() throws InterruptedException {
+        LongLongMap map = new LongLongMap(16);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                // each value is set with its key, so a reader never sees another key's value.
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (long key = 1; key <= 1000; key++) {
+                        long value = map.get(key, -1);
+                        if (value != -1 && value % 1000 != key % 1000)
+                            throw new AssertionError("key: " + key + " value: " + value);
+                    }
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 500; i++) {
+            for (long key = 1; key <= 1000; key++)
+                map.put(key, key + i * 1000L);
+            for (long key = 1; key <= 1000; key += 2)
+                map.remove(key);
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(error.get());
+        assertEquals(500, map.size());
+        map.close();
+    }
+}
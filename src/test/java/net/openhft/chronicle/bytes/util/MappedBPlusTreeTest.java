@@ -0,0 +1,263 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.core.OS;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedBPlusTreeTest {
+    private static File tempFile(String name) {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, name + "-" + System.nanoTime() + ".bpt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static MappedFile mappedFile(File file) throws FileNotFoundException {
+        return MappedFile.mappedFile(file, 1 << 20);
+    }
+
+    /**
+     * Big endian so the keys are in numeric order.
+     */
+    private static Bytes timeKey(Bytes bytes, long time) {
+        bytes.clear();
+        bytes.writeLong(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? Long.reverseBytes(time) : time);
+        return bytes;
+    }
+
+    @Test
+    public void testPutGetScan() throws Exception {
+        MappedFile mf = mappedFile(tempFile("testPutGet"));
+        // small pages for a deep tree.
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 256, 8);
+        assertEquals(10, tree.maxEntries());
+        List<Long> times = new ArrayList<>();
+        for (long i = 0; i < 50_000; i++)
+            times.add(i * 10);
+        Collections.shuffle(times, new Random(1));
+        Bytes key = Bytes.allocateElasticDirect();
+        for (long time : times)
+            assertTrue(tree.put(timeKey(key, time), time * 2));
+        assertFalse(tree.put(timeKey(key, 100), -1));
+        assertEquals(-1, tree.get(timeKey(key, 100), 0));
+        assertFalse(tree.put(timeKey(key, 100), 200));
+        assertEquals(50_000, tree.size());
+        assertTrue(tree.height() > 3);
+
+        for (long time : times)
+            assertEquals(time * 2, tree.get(timeKey(key, time), -1));
+        assertEquals(-1, tree.get(timeKey(key, 5), -1));
+
+        // a range query from 1005 to 2000
+        MappedBPlusTree.Cursor cursor = tree.cursor();
+        Bytes end = timeKey(Bytes.allocateElasticDirect(), 2000);
+        long expected = 1010;
+        for (boolean ok = cursor.seek(timeKey(key, 1005)); ok && cursor.compareKey(end) <= 0; ok = cursor.next()) {
+            assertEquals(expected * 2, cursor.value());
+            expected += 10;
+        }
+        assertEquals(2010, expected);
+
+        assertTrue(cursor.first());
+        long count = 1;
+        Bytes previous = Bytes.allocateElasticDirect();
+        cursor.readKey(previous);
+        while (cursor.next()) {
+            assertTrue(cursor.compareKey(previous) > 0);
+            previous.clear();
+            cursor.readKey(previous);
+            count++;
+        }
+        assertEquals(50_000, count);
+        assertFalse(cursor.seek(timeKey(key, 500_000)));
+        tree.close();
+        mf.close();
+    }
+
+    @Test
+    public void testVariableLengthKeys() throws Exception {
+        MappedFile mf = mappedFile(tempFile("testVariableLength"));
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 512, 16);
+        String[] words = {"b", "ab", "a", "abc", "", "bÿ", "ba", "aaaaaaaaaaaaaaaa"};
+        for (int i = 0; i < words.length; i++)
+            tree.put(Bytes.from(words[i]), i);
+        MappedBPlusTree.Cursor cursor = tree.cursor();
+        StringBuilder sb = new StringBuilder();
+        Bytes key = Bytes.allocateElasticDirect();
+        for (boolean ok = cursor.first(); ok; ok = cursor.next()) {
+            key.clear();
+            cursor.readKey(key);
+            sb.append('[').append(key.toString()).append(']');
+        }
+        assertEquals("[][a][aaaaaaaaaaaaaaaa][ab][abc][b][ba][bÿ]", sb.toString());
+        tree.close();
+        mf.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyTooLong() throws Exception {
+        MappedFile mf = mappedFile(tempFile("testKeyTooLong"));
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 256, 8);
+        try {
+            tree.put(Bytes.from("123456789"), 1);
+        } finally {
+            tree.close();
+            mf.close();
+        }
+    }
+
+    @Test
+    public void testBulkLoadAndReopen() throws Exception {
+        File file = tempFile("testBulkLoad");
+        MappedFile mf = mappedFile(file);
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 256, 8);
+        MappedBPlusTree.BulkLoader loader = tree.bulkLoader(0.75);
+        Bytes key = Bytes.allocateElasticDirect();
+        for (long i = 0; i < 100_000; i++)
+            loader.add(timeKey(key, i * 2), i);
+        try {
+            loader.add(timeKey(key, 10), 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        loader.finish();
+        assertEquals(100_000, tree.size());
+        for (long i = 0; i < 100_000; i += 7)
+            assertEquals(i, tree.get(timeKey(key, i * 2), -1));
+        // the pages have space for more.
+        for (long i = 0; i < 1_000; i++)
+            assertTrue(tree.put(timeKey(key, i * 2 + 1), -i));
+        tree.close();
+        mf.close();
+
+        MappedFile mf2 = mappedFile(file);
+        MappedBPlusTree tree2 = MappedBPlusTree.of(mf2, 256, 8);
+        assertEquals(101_000, tree2.size());
+        MappedBPlusTree.Cursor cursor = tree2.cursor();
+        assertTrue(cursor.seek(timeKey(key, 1)));
+        assertEquals(0, cursor.value());
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.value());
+        assertTrue(cursor.next());
+        assertEquals(-1, cursor.value());
+        assertEquals(99_999, tree2.get(timeKey(key, 199_998), -1));
+        tree2.close();
+        mf2.close();
+    }
+
+    @Test
+    public void testPutDuringBulkLoad() throws Exception {
+        MappedFile mf = mappedFile(tempFile("testPutDuringBulkLoad"));
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 256, 8);
+        Bytes key = Bytes.allocateElasticDirect();
+        MappedBPlusTree.BulkLoader loader = tree.bulkLoader(1.0);
+        loader.add(timeKey(key, 1), 1);
+        try {
+            tree.put(timeKey(key, 2), 2);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        loader.finish();
+        try {
+            loader.add(timeKey(key, 3), 3);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(tree.put(timeKey(key, 2), 2));
+        assertEquals(2, tree.size());
+        tree.close();
+        mf.close();
+    }
+
+    @Test
+    public void testCursorAfterClose() throws Exception {
+        MappedFile mf = mappedFile(tempFile("testCursorAfterClose"));
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 256, 8);
+        Bytes key = Bytes.allocateElasticDirect();
+        tree.put(timeKey(key, 1), 1);
+        MappedBPlusTree.Cursor cursor = tree.cursor();
+        assertTrue(cursor.first());
+        tree.close();
+        try {
+            cursor.value();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            cursor.next();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            cursor.seek(timeKey(key, 1));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        mf.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentPageSize() throws Exception {
+        File file = tempFile("testDifferentPageSize");
+        MappedFile mf = mappedFile(file);
+        MappedBPlusTree.of(mf, 256, 8).close();
+        try {
+            MappedBPlusTree.of(mf, 512, 8);
+        } finally {
+            mf.close();
+        }
+    }
+
+    @Test
+    @Ignore("Long running")
+    public void testBulkLoadThroughput() throws Exception {
+        MappedFile mf = MappedFile.mappedFile(tempFile("testThroughput"), 64 << 20);
+        MappedBPlusTree tree = MappedBPlusTree.of(mf, 4096, 8);
+        Bytes key = Bytes.allocateElasticDirect();
+        int entries = 20_000_000;
+        long start = System.nanoTime();
+        MappedBPlusTree.BulkLoader loader = tree.bulkLoader(1.0);
+        for (long i = 0; i < entries; i++)
+            loader.add(timeKey(key, i), i);
+        loader.finish();
+        long time = System.nanoTime() - start;
+        System.out.printf("Bulk loaded %,d entries/s%n", entries * 1_000_000_000L / time);
+
+        Random random = new Random(1);
+        start = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++)
+            tree.get(timeKey(key, random.nextInt(entries)), -1);
+        time = System.nanoTime() - start;
+        System.out.printf("Random get took %,d ns on average%n", time / 1_000_000);
+        tree.close();
+        mf.close();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.util.MetricsRegistry.Counter;
+import net.openhft.chronicle.bytes.util.MetricsRegistry.Histogram;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Test
+    public void testBuckets() {
+        assertEquals(488, Histogram.BUCKETS);
+        for (int b = 0; b < Histogram.BUCKETS; b++) {
+            long low = Histogram.lowestValueOf(b);
+            long high = Histogram.highestValueOf(b);
+            assertEquals(b, Histogram.bucketFor(low));
+            assertEquals(b, Histogram.bucketFor(high));
+            assertTrue(b < 8 || high - low < low / 8 + 1);
+        }
+        assertEquals(0, Histogram.bucketFor(-1));
+    }
+
+    @Test
+    public void testCountersAndHistograms() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64 << 10);
+        MetricsRegistry registry = new MetricsRegistry(store);
+        Counter orders = registry.counter("orders");
+        assertEquals(1, orders.increment());
+        assertEquals(11, orders.add(10));
+        assertTrue(orders.compareAndSet(11, 20));
+        assertFalse(orders.compareAndSet(11, 30));
+        assertEquals(0, registry.counter("fills").get());
+
+        Histogram latency = registry.histogram("latency");
+        for (int i = 1; i <= 1000; i++)
+            latency.record(i);
+        assertEquals(1000, latency.count());
+        assertEquals(500500, latency.sum());
+        assertEquals(1000, latency.max());
+        long p50 = latency.percentile(0.5);
+        assertTrue(p50 + " ~ 500", p50 >= 500 && p50 < 500 * 9 / 8);
+        assertEquals(1000, latency.percentile(1.0));
+
+        // a second registry, e.g. in the monitoring process, sees the same metrics.
+        MetricsRegistry monitor = new MetricsRegistry(store);
+        assertEquals("{orders=20, fills=0}", monitor.counters().toString());
+        assertEquals(1000, monitor.histograms().get("latency").count());
+        assertEquals(20, monitor.counter("orders").get());
+        store.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64 << 10);
+        try {
+            MetricsRegistry registry = new MetricsRegistry(store);
+            registry.counter("latency");
+            registry.histogram("latency");
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testWrongTypeLeavesNoEntry() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64 << 10);
+        MetricsRegistry registry = new MetricsRegistry(store);
+        registry.counter("latency");
+        try {
+            registry.histogram("latency");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, registry.histograms().size());
+        assertEquals(MetricsRegistry.ENTRY_VALUES + Counter.SIZE, store.readLong(MetricsRegistry.USED));
+        store.release();
+    }
+
+    @Test
+    public void testDeadEntry() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64 << 10);
+        // a process died after claiming an entry but before publishing it.
+        int size = MetricsRegistry.ENTRY_VALUES + Counter.SIZE;
+        store.writeInt(MetricsRegistry.ENTRIES + MetricsRegistry.ENTRY_SIZE, size);
+        store.writeLong(MetricsRegistry.USED, size);
+
+        MetricsRegistry registry = new MetricsRegistry(store);
+        registry.counter("requests").increment();
+        assertEquals(MetricsRegistry.DEAD, store.readInt(MetricsRegistry.ENTRIES + MetricsRegistry.ENTRY_TYPE));
+        assertEquals("{requests=1}", new MetricsRegistry(store).counters().toString());
+        assertEquals(2 * size, store.readLong(MetricsRegistry.USED));
+        store.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(1024);
+        try {
+            MetricsRegistry registry = new MetricsRegistry(store);
+            for (int i = 0; ; i++)
+                registry.counter("counter" + i);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testConcurrentRegistries() throws Exception {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(1 << 20);
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(es.submit(() -> {
+                // each thread has its own registry as a separate process would.
+                MetricsRegistry registry = new MetricsRegistry(store);
+                for (int i = 0; i < 10_000; i++) {
+                    registry.counter("counter" + i % 20).increment();
+                    registry.histogram("histogram" + i % 5).record(i);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        es.shutdown();
+        MetricsRegistry registry = new MetricsRegistry(store);
+        assertEquals(20, registry.counters().size());
+        assertEquals(5, registry.histograms().size());
+        for (Counter counter : registry.counters().values())
+            assertEquals(2000, counter.get());
+        for (Histogram histogram : registry.histograms().values())
+            assertEquals(8000, histogram.count());
+        store.release();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testMetrics-" + System.nanoTime() + ".dat");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store = mf.acquireByteStore(0);
+        new MetricsRegistry(store).counter("requests").add(42);
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store2 = mf2.acquireByteStore(0);
+        assertEquals(42, new MetricsRegistry(store2).counters().get("requests").get());
+        store.release();
+        store2.release();
+        mf.close();
+        mf2.close();
+    }
+}
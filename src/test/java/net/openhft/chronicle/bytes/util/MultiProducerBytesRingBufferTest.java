@@ -0,0 +1,143 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MultiProducerBytesRingBufferTest {
+    @Test
+    public void testOfferRead() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(128));
+        MultiProducerBytesRingBuffer ring = new MultiProducerBytesRingBuffer(store);
+        List<String> read = new ArrayList<>();
+        // 8 records of 16 bytes fill it.
+        for (int i = 0; i < 8; i++)
+            assertTrue(ring.offer(Bytes.from("rec" + i)));
+        assertFalse(ring.offer(Bytes.from("rec8")));
+        assertEquals(8, ring.read(b -> read.add(b.toString()), 10));
+
+        // leave 16 bytes before the end, and free the 48 bytes at the start.
+        for (int i = 8; i < 15; i++)
+            assertTrue(ring.offer(Bytes.from("rec" + i)));
+        assertEquals(3, ring.read(b -> read.add(b.toString()), 3));
+        // the next record of 24 bytes doesn't fit before the end so it goes after 16 bytes of padding.
+        assertTrue(ring.offer(Bytes.from("record-number15")));
+        assertEquals(4 * 16 + 16 + 24, ring.used());
+        assertEquals(5, ring.read(b -> read.add(b.toString()), 10));
+        assertEquals("[rec0, rec1, rec2, rec3, rec4, rec5, rec6, rec7, rec8, rec9, rec10, rec11, rec12, rec13, rec14, record-number15]",
+                read.toString());
+        assertEquals(0, ring.used());
+        assertEquals(0, ring.read(b -> fail(), 10));
+        ring.close();
+        store.release();
+    }
+
+    @Test
+    public void testProducers() throws Exception {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(4096));
+        MultiProducerBytesRingBuffer ring = new MultiProducerBytesRingBuffer(store);
+        int producers = 4, records = 50_000;
+        ExecutorService es = Executors.newFixedThreadPool(producers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            futures.add(es.submit(() -> {
+                Bytes bytes = Bytes.allocateElasticDirect();
+                for (int i = 0; i < records; i++) {
+                    bytes.clear();
+                    bytes.writeInt(id);
+                    // variable lengths
+                    for (int j = 0; j <= i % 7; j++)
+                        bytes.writeInt(i);
+                    while (!ring.offer(bytes))
+                        Thread.yield();
+                }
+                return null;
+            }));
+        }
+        int[] next = new int[producers];
+        int total = 0;
+        while (total < producers * records) {
+            total += ring.read(b -> {
+                int id = b.readInt();
+                int i = next[id]++;
+                assertEquals(4 * (i % 7 + 1), b.readRemaining());
+                while (b.readRemaining() > 0)
+                    assertEquals(i, b.readInt());
+            }, 64);
+            for (Future<?> future : futures)
+                if (future.isDone())
+                    future.get();
+        }
+        es.shutdown();
+        for (int n : next)
+            assertEquals(records, n);
+        ring.close();
+        store.release();
+    }
+
+    @Test
+    @Ignore("Long running")
+    public void testThroughputAndLatency() throws Exception {
+        for (int producers : new int[]{1, 2, 4, 8}) {
+            NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(BytesRingBuffer.sizeFor(1 << 20));
+            MultiProducerBytesRingBuffer ring = new MultiProducerBytesRingBuffer(store);
+            int records = 2_000_000 / producers;
+            ExecutorService es = Executors.newFixedThreadPool(producers);
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                es.submit(() -> {
+                    Bytes bytes = Bytes.allocateElasticDirect(64);
+                    for (int i = 0; i < records; i++) {
+                        bytes.clear();
+                        bytes.writeLong(System.nanoTime());
+                        bytes.writeSkip(24);
+                        while (!ring.offer(bytes))
+                            Thread.yield();
+                    }
+                });
+            }
+            long[] latencies = new long[records * producers];
+            int[] count = {0};
+            while (count[0] < latencies.length)
+                ring.read(b -> latencies[count[0]++] = System.nanoTime() - b.readLong(), 256);
+            long time = System.nanoTime() - start;
+            es.shutdown();
+            Arrays.sort(latencies);
+            System.out.printf("producers: %d, %,d records/s, latency us 50%%: %.1f 90%%: %.1f 99%%: %.1f 99.9%%: %.1f%n",
+                    producers, latencies.length * 1_000_000_000L / time,
+                    latencies[latencies.length / 2] / 1e3,
+                    latencies[latencies.length * 9 / 10] / 1e3,
+                    latencies[latencies.length * 99 / 100] / 1e3,
+                    latencies[latencies.length * 999 / 1000] / 1e3);
+            ring.close();
+            store.release();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.util.NativeBytesMap.Probing;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class NativeBytesMapTest {
+    @Test
+    public void testPutGetRemove() {
+        for (Probing probing : Probing.values()) {
+            NativeBytesMap map = NativeBytesMap.of(1000, 8, 16, probing);
+            Bytes key = Bytes.allocateElasticDirect();
+            Bytes value = Bytes.allocateElasticDirect();
+            Bytes out = Bytes.allocateElasticDirect();
+            for (int i = 0; i < 1000; i++) {
+                key.clear();
+                key.append8bit("key").append(i);
+                value.clear();
+                value.append8bit("value-").append(i);
+                assertFalse(map.put(key, value));
+            }
+            assertEquals(1000, map.size());
+
+            for (int i = 0; i < 1000; i++) {
+                // heap keys find the same entries.
+                assertTrue(map.get(Bytes.from("key" + i), out));
+                assertEquals("value-" + i, out.toString());
+            }
+            assertFalse(map.get(Bytes.from("key1000"), out));
+            assertFalse(map.containsKey(Bytes.from("")));
+
+            for (int i = 0; i < 1000; i += 2)
+                assertTrue(map.remove(Bytes.from("key" + i)));
+            assertFalse(map.remove(Bytes.from("key0")));
+            assertEquals(500, map.size());
+            for (int i = 0; i < 1000; i++)
+                assertEquals(i % 2 != 0, map.containsKey(Bytes.from("key" + i)));
+
+            map.clear();
+            assertEquals(0, map.size());
+            assertFalse(map.containsKey(Bytes.from("key1")));
+            map.close();
+        }
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        for (Probing probing : Probing.values()) {
+            // small values so growing them uses up the space and forces compaction.
+            NativeBytesMap map = NativeBytesMap.of(200, 4, 4, probing);
+            Map<String, String> expected = new HashMap<>();
+            Random rand = new Random(probing.ordinal());
+            Bytes out = Bytes.allocateElasticDirect();
+            for (int i = 0; i < 100_000; i++) {
+                String key = "k" + rand.nextInt(150);
+                switch (rand.nextInt(4)) {
+                    case 0:
+                        assertEquals(expected.remove(key) != null, map.remove(Bytes.from(key)));
+                        break;
+                    case 1:
+                        String value = Integer.toString(rand.nextInt(), 36);
+                        if (rand.nextBoolean())
+                            value += value;
+                        assertEquals(expected.put(key, value) != null, map.put(Bytes.from(key), Bytes.from(value)));
+                        break;
+                    default:
+                        String v = expected.get(key);
+                        assertEquals(v != null, map.get(Bytes.from(key), out));
+                        if (v != null)
+                            assertEquals(v, out.toString());
+                        break;
+                }
+            }
+            assertEquals(expected.size(), map.size());
+            map.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        NativeBytesMap map = NativeBytesMap.of(16, 4, 4, Probing.LINEAR);
+        try {
+            for (int i = 0; i < 1000; i++)
+                map.put(Bytes.from("key" + i), Bytes.from("value" + i));
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testMappedFile-" + System.nanoTime() + ".map");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 4 << 20);
+        NativeBytesMap map = NativeBytesMap.of(mf, 10_000, 8, 8, Probing.ROBIN_HOOD);
+        for (int i = 0; i < 10_000; i++)
+            map.put(Bytes.from("key" + i), Bytes.from("val" + i));
+        map.close();
+        mf.close();
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 4 << 20);
+        // the sizes are taken from the file.
+        NativeBytesMap map2 = NativeBytesMap.of(mf2, 1, 1, 1, Probing.LINEAR);
+        assertEquals(Probing.ROBIN_HOOD, map2.probing());
+        assertEquals(10_000, map2.size());
+        Bytes out = Bytes.allocateElasticDirect();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(map2.get(Bytes.from("key" + i), out));
+            assertEquals("val" + i, out.toString());
+        }
+        map2.close();
+        mf2.close();
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        NativeBytesMap map = NativeBytesMap.of(40_000, 8, 8, Probing.ROBIN_HOOD);
+        assertTrue(map.segments() > 1);
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            futures.add(es.submit(() -> {
+                Bytes key = Bytes.allocateElasticDirect();
+                Bytes value = Bytes.allocateElasticDirect();
+                Bytes out = Bytes.allocateElasticDirect();
+                for (int i = 0; i < 10_000; i++) {
+                    key.clear();
+                    key.append8bit("t").append(id).append('-').append(i);
+                    value.clear();
+                    value.append(i);
+                    map.put(key, value);
+                    assertTrue(map.get(key, out));
+                    assertEquals(i, out.parseLong());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        es.shutdown();
+        assertEquals(40_000, map.size());
+        map.close();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.MappedBytesStore;
+import net.openhft.chronicle.bytes.MappedFile;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.RandomDataOutput;
+import net.openhft.chronicle.core.OS;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SeqLockTest {
+    static class TopOfBook implements SeqLock.Struct {
+        long bidPrice, bidQty, askPrice, askQty;
+
+        @Override
+        public int size() {
+            return 32;
+        }
+
+        @Override
+        public void readFrom(@NotNull RandomDataInput in, long offset) {
+            bidPrice = in.readLong(offset);
+            bidQty = in.readLong(offset + 8);
+            askPrice = in.readLong(offset + 16);
+            askQty = in.readLong(offset + 24);
+        }
+
+        @Override
+        public void writeTo(@NotNull RandomDataOutput out, long offset) {
+            out.writeLong(offset, bidPrice);
+            out.writeLong(offset + 8, bidQty);
+            out.writeLong(offset + 16, askPrice);
+            out.writeLong(offset + 24, askQty);
+        }
+    }
+
+    @Test
+    public void testWriteRead() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(SeqLock.sizeFor(32));
+        SeqLock lock = new SeqLock(store, 0, SeqLock.sizeFor(32));
+        TopOfBook tob = new TopOfBook();
+        tob.bidPrice = 100;
+        tob.bidQty = 5;
+        tob.askPrice = 101;
+        tob.askQty = 7;
+        assertEquals(0, lock.version());
+        lock.write(tob);
+        assertEquals(2, lock.version());
+
+        TopOfBook tob2 = new TopOfBook();
+        assertEquals(2, lock.read(tob2));
+        assertEquals(100, tob2.bidPrice);
+        assertEquals(5, tob2.bidQty);
+        assertEquals(101, tob2.askPrice);
+        assertEquals(7, tob2.askQty);
+
+        long version = lock.beginRead();
+        lock.beginWrite();
+        assertFalse(lock.validate(version));
+        lock.endWrite();
+        assertFalse(lock.validate(version));
+        assertTrue(lock.validate(lock.beginRead()));
+        store.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNestedWrite() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64);
+        try {
+            SeqLock lock = new SeqLock(store, 0, 64);
+            lock.beginWrite();
+            lock.beginWrite();
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmall() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64);
+        try {
+            new SeqLock(store, 0, 32).write(new TopOfBook());
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64);
+        SeqLock lock = new SeqLock(store, 0, 64);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                SeqLock reader = new SeqLock(store, 0, 64);
+                TopOfBook tob = new TopOfBook();
+                while (running.get()) {
+                    reader.read(tob);
+                    // every write sets all the fields to the same value.
+                    if (tob.bidQty != tob.bidPrice || tob.askPrice != tob.bidPrice || tob.askQty != tob.bidPrice)
+                        errors.incrementAndGet();
+                    reads.incrementAndGet();
+                }
+            });
+            readers[t].start();
+        }
+        TopOfBook tob = new TopOfBook();
+        for (int i = 1; i <= 1_000_000; i++) {
+            tob.bidPrice = tob.bidQty = tob.askPrice = tob.askQty = i;
+            lock.write(tob);
+        }
+        running.set(false);
+        for (Thread reader : readers)
+            reader.join();
+        assertEquals(0, errors.get());
+        assertTrue(reads.get() > 0);
+        assertEquals(2_000_000, lock.version());
+        store.release();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        new File(OS.TARGET).mkdir();
+        File file = new File(OS.TARGET, "testSeqLock-" + System.nanoTime() + ".dat");
+        file.deleteOnExit();
+        MappedFile mf = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store = mf.acquireByteStore(0);
+        TopOfBook tob = new TopOfBook();
+        tob.bidPrice = 99;
+        tob.askQty = 3;
+        new SeqLock(store, 64, 40).write(tob);
+
+        MappedFile mf2 = MappedFile.mappedFile(file, 64 << 10);
+        MappedBytesStore store2 = mf2.acquireByteStore(0);
+        TopOfBook tob2 = new TopOfBook();
+        assertEquals(2, new SeqLock(store2, 64, 40).read(tob2));
+        assertEquals(99, tob2.bidPrice);
+        assertEquals(3, tob2.askQty);
+        store.release();
+        store2.release();
+        mf.close();
+        mf2.close();
+    }
+}
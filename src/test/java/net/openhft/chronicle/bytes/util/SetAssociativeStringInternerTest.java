@@ -0,0 +1,109 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.util.SetAssociativeStringInterner.Eviction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SetAssociativeStringInternerTest {
+    @Test
+    public void testIntern() {
+        for (Eviction eviction : Eviction.values()) {
+            SetAssociativeStringInterner si = new SetAssociativeStringInterner(128, 8, eviction);
+            for (String text : new String[]{"hello", "", "£100", "€世界", "key-1"}) {
+                Bytes bytes = Bytes.allocateElasticDirect();
+                bytes.appendUtf8(text);
+                String s = si.intern(bytes);
+                assertEquals(text, s);
+                assertEquals(0, bytes.readPosition());
+                assertSame(s, si.intern(bytes));
+
+                Bytes heap = Bytes.elasticByteBuffer();
+                heap.appendUtf8(text);
+                assertSame(s, si.intern(heap, (int) heap.readRemaining()));
+                assertEquals(0, heap.readRemaining());
+            }
+            assertEquals(5, si.misses());
+            assertEquals(10, si.hits());
+            assertEquals(0, si.evictions());
+            assertEquals(5, si.valueCount());
+        }
+    }
+
+    @Test
+    public void testEvictionLRU() {
+        // a single set of 16 ways.
+        SetAssociativeStringInterner si = new SetAssociativeStringInterner(16, 16, Eviction.LRU);
+        String[] keys = new String[17];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = si.intern(Bytes.from("key" + i));
+        assertEquals(1, si.evictions());
+        // key0 was the least recently used
+        assertNotSame(keys[0], si.intern(Bytes.from("key0")));
+        // which evicted key1 so key2 is still there
+        assertSame(keys[2], si.intern(Bytes.from("key2")));
+        assertEquals(2, si.evictions());
+    }
+
+    @Test
+    public void testEvictionCLOCK() {
+        SetAssociativeStringInterner si = new SetAssociativeStringInterner(16, 16, Eviction.CLOCK);
+        String[] keys = new String[16];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = si.intern(Bytes.from("key" + i));
+        // all have been used so the hand goes around once, clearing them and takes the first.
+        si.intern(Bytes.from("key16"));
+        // key1 is used again so it is passed over.
+        assertSame(keys[1], si.intern(Bytes.from("key1")));
+        si.intern(Bytes.from("key17"));
+        assertSame(keys[1], si.intern(Bytes.from("key1")));
+        assertNotSame(keys[2], si.intern(Bytes.from("key2")));
+        assertEquals(3, si.evictions());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        SetAssociativeStringInterner si = new SetAssociativeStringInterner(1024, 8, Eviction.CLOCK);
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(es.submit(() -> {
+                Bytes bytes = Bytes.allocateElasticDirect();
+                for (int i = 0; i < 100000; i++) {
+                    String key = "key" + (i % 2000);
+                    bytes.clear();
+                    bytes.append8bit(key);
+                    assertEquals(key, si.intern(bytes));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        es.shutdown();
+        assertEquals(400000, si.hits() + si.misses());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.bytes.util;
+
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+    @Test
+    public void testAdd() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(StripedCounter.sizeFor(8));
+        StripedCounter counter = new StripedCounter(store, 0, 8);
+        counter.increment();
+        counter.add(41);
+        assertEquals(42, counter.sum());
+        assertEquals("42", counter.toString());
+        counter.add(-2);
+        assertEquals(40, new StripedCounter(store, 0, 8).sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+        store.release();
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testTooSmall() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(StripedCounter.sizeFor(4));
+        try {
+            new StripedCounter(store, 0, 8);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotPowerOf2() {
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(StripedCounter.sizeFor(8));
+        try {
+            new StripedCounter(store, 0, 6);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        int stripes = StripedCounter.defaultStripes();
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(StripedCounter.sizeFor(stripes));
+        StripedCounter counter = new StripedCounter(store, 0, stripes);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 250_000; i++)
+                    counter.increment();
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(2_000_000, counter.sum());
+        store.release();
+    }
+
+    @Test
+    @Ignore("Long running")
+    public void testContendedThroughput() throws InterruptedException {
+        int stripes = StripedCounter.defaultStripes();
+        NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(64 + StripedCounter.sizeFor(stripes));
+        StripedCounter counter = new StripedCounter(store, 64, stripes);
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            for (boolean striped : new boolean[]{false, true}) {
+                int count = 10_000_000 / threads;
+                Thread[] ts = new Thread[threads];
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    ts[t] = new Thread(() -> {
+                        for (int i = 0; i < count; i++)
+                            if (striped)
+                                counter.increment();
+                            else
+                                store.addAndGetLong(0, 1);
+                    });
+                    ts[t].start();
+                }
+                for (Thread t : ts)
+                    t.join();
+                long time = System.nanoTime() - start;
+                System.out.printf("threads: %d, %s: %,d adds/s%n", threads, striped ? "striped" : "addAndGetLong",
+                        (long) count * threads * 1_000_000_000L / time);
+            }
+        }
+        store.release();
+    }
+}